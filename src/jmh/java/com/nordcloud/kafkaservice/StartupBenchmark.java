@@ -0,0 +1,158 @@
+package com.nordcloud.kafkaservice;
+
+import com.nordcloud.kafkaservice.codec.ProductDtoSerializer;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a consumer node to its first record committed, the delay a node added under load takes to
+ * help. Every measurement starts a JVM from the {@code build/fast-start} layout on a new consumer group of a topic
+ * holding one product and stops once the group committed its offset:
+ * <ul>
+ * <li>DEFAULT: both roles, eager initialization, schema created on boot</li>
+ * <li>FAST_START: the {@code fast-start} and {@code consumer} profiles</li>
+ * <li>FAST_START_AOT_CDS: the same with the AOT processed context and the class data sharing archive</li>
+ * </ul>
+ * Needs the layout built by {@code gradle cdsArchive}, which the jmh task does not build, and fails its setup
+ * without it so the other benchmarks go on. Needs the Kafka and Postgres of the docker compose setup as well, or the
+ * ones named by {@code -Dbenchmark.kafka=host:port} and {@code -Dbenchmark.postgres=host:port}. The output of the
+ * last node is kept in {@code startup-benchmark.log}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final String FAST_START_PROFILES = "fast-start,consumer"; // the profiles AOT processed by default
+
+    @Param({"DEFAULT", "FAST_START", "FAST_START_AOT_CDS"})
+    public String startup;
+
+    private Path fastStart;
+    private String kafka;
+    private String postgres;
+    private String topic;
+    private AdminClient adminClient;
+    private String groupId;
+    private Process node;
+
+    @Setup
+    public void setUp() throws Exception {
+        fastStart = Path.of(System.getProperty("benchmark.fastStart", "build/fast-start"));
+        Path required = fastStart.resolve(startup.equals("FAST_START_AOT_CDS") ? "kafka-service.jsa" : "lib");
+        if (!Files.exists(required)) {
+            throw new IllegalStateException("Skipping " + startup + ", " + required + " is missing: run gradle cdsArchive");
+        }
+        kafka = System.getProperty("benchmark.kafka", "localhost:9092");
+        postgres = System.getProperty("benchmark.postgres", "localhost:5432");
+        topic = "benchmark.startup." + UUID.randomUUID();
+        createSchema(); // the fast-start profile leaves the schema alone
+        adminClient = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, kafka));
+        Map<String, Object> producerProperties = Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka,
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ProductDtoSerializer.class);
+        try (KafkaProducer<String, ProductDto> producer = new KafkaProducer<>(producerProperties)) {
+            String uuid = UUID.randomUUID().toString();
+            producer.send(new ProducerRecord<>(topic, uuid, new ProductDto(uuid, "Prod-" + uuid, "Prod-" + uuid, 1D)))
+                    .get(); // read again by every node, each in a group of its own
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newGroup() {
+        groupId = "benchmark-startup-" + UUID.randomUUID();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopNode() throws InterruptedException {
+        node.destroy();
+        if (!node.waitFor(30, TimeUnit.SECONDS)) {
+            node.destroyForcibly().waitFor();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        adminClient.close();
+    }
+
+    @Benchmark
+    public void timeToFirstRecord() throws Exception {
+        node = launch();
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (adminClient.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata().get().isEmpty()) {
+            if (!node.isAlive() || System.nanoTime() > deadline) {
+                throw new IllegalStateException("No record committed by the node, see startup-benchmark.log in " + fastStart);
+            }
+            Thread.sleep(POLL_INTERVAL.toMillis());
+        }
+    }
+
+    private Process launch() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (startup.equals("FAST_START_AOT_CDS")) {
+            command.add("-XX:SharedArchiveFile=kafka-service.jsa"); // dumped by the same JDK
+            command.add("-Dspring.aot.enabled=true");
+        }
+        command.addAll(List.of("-cp", "lib/*", KafkaServiceApplication.class.getName(),
+                "--spring.kafka.bootstrap-servers=" + kafka,
+                "--spring.r2dbc.url=r2dbc:postgresql://postgres:postgres@" + postgres + "/postgres",
+                "--product.topic=" + topic,
+                "--spring.kafka.consumer.group-id=" + groupId,
+                "--server.port=0"));
+        if (!startup.equals("DEFAULT")) {
+            command.add("--spring.profiles.active=" + FAST_START_PROFILES);
+        }
+        return new ProcessBuilder(command)
+                .directory(fastStart.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(fastStart.resolve("startup-benchmark.log").toFile())
+                .start();
+    }
+
+    private void createSchema() throws Exception {
+        String schema;
+        try (InputStream resource = StartupBenchmark.class.getResourceAsStream("/schema.sql")) {
+            schema = new String(resource.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:postgresql://" + postgres + "/postgres", "postgres", "postgres");
+             Statement statement = connection.createStatement()) {
+            statement.execute(schema); // create if not exists
+        }
+    }
+}
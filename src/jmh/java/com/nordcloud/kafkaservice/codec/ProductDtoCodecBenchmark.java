@@ -0,0 +1,83 @@
+package com.nordcloud.kafkaservice.codec;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ns/record of the JSON and binary product codecs, with the serialized size reported as the bytesPerRecord
+ * counter. Run with {@code gradle jmh -Pjmh.includes=ProductDtoCodec}, add {@code -prof gc} for allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductDtoCodecBenchmark {
+
+    private static final String TOPIC = "product_topic";
+
+    @Param({"JSON", "BINARY"})
+    public ProductCodec codec;
+
+    private ProductDtoSerializer serializer;
+    private ProductDtoDeserializer deserializer;
+    private ProductDto productDto;
+    private byte[] payload;
+    private RecordHeaders headers;
+
+    @Setup
+    public void setUp() {
+        serializer = new ProductDtoSerializer();
+        serializer.configure(Map.of(ProductCodec.CONFIG, codec.name()), false);
+        deserializer = new ProductDtoDeserializer();
+        deserializer.configure(Map.of("spring.json.use.type.headers", "false",
+                "spring.json.value.default.type", ProductDto.class.getName(),
+                "spring.json.trusted.packages", "*"), false);
+        String uuid = UUID.randomUUID().toString();
+        productDto = new ProductDto(uuid, "Prod-" + uuid, "Prod-" + uuid, 42.5D);
+        headers = new RecordHeaders();
+        payload = serializer.serialize(TOPIC, headers, productDto);
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+        deserializer.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PayloadSize {
+        public long bytesPerRecord;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerRecord = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(PayloadSize payloadSize) {
+        byte[] bytes = serializer.serialize(TOPIC, new RecordHeaders(), productDto);
+        payloadSize.bytesPerRecord = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public ProductDto deserialize() {
+        return deserializer.deserialize(TOPIC, headers, payload);
+    }
+}
@@ -0,0 +1,36 @@
+package com.nordcloud.kafkaservice.mapper;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductMapperBenchmark {
+
+    private ProductMapper productMapper;
+    private ProductDto productDto;
+
+    @Setup
+    public void setUp() {
+        productMapper = Mappers.getMapper(ProductMapper.class);
+        String uuid = UUID.randomUUID().toString();
+        productDto = new ProductDto(uuid, "Prod-" + uuid, "Prod-" + uuid, 42.5D);
+    }
+
+    @Benchmark
+    public Product toProduct() {
+        return productMapper.toProduct(productDto);
+    }
+}
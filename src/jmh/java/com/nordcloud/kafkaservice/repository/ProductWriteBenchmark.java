@@ -0,0 +1,140 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.configuration.PersistenceSchedulerType;
+import com.nordcloud.kafkaservice.configuration.SchedulerConfiguration;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of the R2DBC and the JDBC write paths on each persistence scheduler and table layout, with as
+ * many batches in flight as the consumer allows. Every invocation writes products of new uuids, so the rows are
+ * inserted rather than updated, into a table emptied before every iteration. Needs the Postgres of the docker
+ * compose setup, or the one named by {@code -Dbenchmark.postgres=host:port}; the product table lives in the
+ * {@value #SCHEMA} schema, dropped and created again for every layout, the application tables are left alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProductWriteBenchmark {
+
+    static final int BATCHES = 20;
+    static final int BATCH_SIZE = 500;
+    static final int IN_FLIGHT = 4;
+    static final String SCHEMA = "product_benchmark";
+
+    @Param({"R2DBC_UNNEST", "R2DBC_COPY", "JDBC_BATCH"})
+    public String writer;
+
+    @Param({"BOUNDED_ELASTIC", "VIRTUAL"})
+    public PersistenceSchedulerType scheduler;
+
+    @Param({"NONE", "HASH", "TIME"})
+    public ProductPartitioning partitioning;
+
+    private Scheduler persistenceScheduler;
+    private HikariDataSource dataSource;
+    private ProductBulkRepository repository;
+    private BulkWriteMode mode;
+    private List<List<Product>> batches;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        String postgres = System.getProperty("benchmark.postgres", "localhost:5432");
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:postgresql://" + postgres + "/postgres?reWriteBatchedInserts=true"
+                + "&currentSchema=" + SCHEMA);
+        config.setUsername("postgres");
+        config.setPassword("postgres");
+        config.setMaximumPoolSize(IN_FLIGHT);
+        dataSource = new HikariDataSource(config);
+        createSchema();
+
+        persistenceScheduler = SchedulerConfiguration.createScheduler(scheduler, IN_FLIGHT);
+        ConnectionFactory connectionFactory = ConnectionFactories.get(
+                "r2dbc:pool:postgresql://postgres:postgres@" + postgres + "/postgres?maxSize=" + IN_FLIGHT
+                        + "&schema=" + SCHEMA);
+        ProductPartitions partitions = new ProductPartitions(connectionFactory, partitioning, 16);
+        if (writer.startsWith("JDBC")) {
+            repository = new JdbcProductRepository(dataSource, persistenceScheduler, partitions);
+            mode = BulkWriteMode.UNNEST; // ignored by the JDBC writer
+        } else {
+            repository = new ProductBulkRepositoryImpl(connectionFactory, partitions);
+            mode = BulkWriteMode.valueOf(writer.substring("R2DBC_".length()));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE product"); // every iteration starts from the same table size
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newProducts() {
+        batches = new ArrayList<>(BATCHES);
+        for (int batch = 0; batch < BATCHES; batch++) {
+            List<Product> products = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                String uuid = UUID.randomUUID().toString();
+                products.add(new Product(null, uuid, "Prod-" + uuid, "Prod-" + uuid, (double) i));
+            }
+            batches.add(products);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        persistenceScheduler.dispose();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCHES * BATCH_SIZE)
+    public Long write() {
+        return Flux.fromIterable(batches)
+                .publishOn(persistenceScheduler, IN_FLIGHT) // the hop of the consumer pipeline
+                .flatMap(products -> repository.upsertAll(products, mode), IN_FLIGHT)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    private void createSchema() throws SQLException, IOException {
+        String schema;
+        try (InputStream resource = ProductWriteBenchmark.class.getResourceAsStream("/" + partitioning.getSchema())) {
+            schema = new String(resource.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+            statement.execute("DROP TABLE IF EXISTS product CASCADE"); // the layout is fixed when the table is created
+            statement.execute(schema);
+        }
+    }
+}
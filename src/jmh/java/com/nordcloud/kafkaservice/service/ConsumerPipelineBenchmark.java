@@ -0,0 +1,142 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.PersistenceSchedulerType;
+import com.nordcloud.kafkaservice.configuration.SchedulerConfiguration;
+import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverRecord;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the whole {@link KafkaConsumerService#consumeProducts()} pipeline (receive, map, batch, write,
+ * commit) per record, fed by an in-memory consumer template and written to a repository that only counts rows,
+ * so the numbers isolate the pipeline overhead from Kafka and Postgres.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConsumerPipelineBenchmark {
+
+    static final int RECORDS = 10_000;
+    static final String TOPIC = "product_topic";
+
+    @Param({"0", "4"})
+    public int partitionParallelism;
+
+    @Param({"1", "8"})
+    public int partitions;
+
+    @Param({"false", "true"})
+    public boolean columnar;
+
+    private KafkaConsumerService consumerService;
+    private Scheduler persistenceScheduler;
+
+    @Setup
+    public void setUp() {
+        List<ReceiverRecord<String, ProductDto>> records = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            String uuid = UUID.randomUUID().toString();
+            ProductDto productDto = new ProductDto(uuid, "Prod-" + uuid, "Prod-" + uuid, (double) i);
+            TopicPartition topicPartition = new TopicPartition(TOPIC, i % partitions);
+            long offset = i / partitions;
+            records.add(new ReceiverRecord<>(
+                    new ConsumerRecord<>(TOPIC, topicPartition.partition(), offset, uuid, productDto),
+                    new InMemoryReceiverOffset(topicPartition, offset)));
+        }
+        RecentProductCache recentProductCache = new RecentProductCache(0); // every invocation replays the same records
+        AdaptiveBatchController batchController =
+                new AdaptiveBatchController(10, 500, Duration.ofMillis(100), Duration.ofSeconds(1), true);
+        ConsumerMetrics consumerMetrics = new ConsumerMetrics(new SimpleMeterRegistry(), TOPIC);
+        ProductColumnsPool productColumnsPool = new ProductColumnsPool(8, 500, 262_144);
+        ProductBatchWriter productBatchWriter = new ProductBatchWriter(countingRepository(),
+                new DeadLetterPublisher(null, TOPIC + ".DLT"), // never called, the counting repository does not fail
+                new ProductSpool(consumerMetrics, false, "", 0, 0, false), // disabled
+                productColumnsPool, recentProductCache, new ProductCache(new SimpleMeterRegistry(), 0, Duration.ofMinutes(1)), // disabled
+                batchController, consumerMetrics, BulkWriteMode.UNNEST,
+                3, Duration.ofMillis(100), Duration.ofSeconds(5));
+        persistenceScheduler = SchedulerConfiguration.createScheduler(partitionParallelism > 0
+                ? PersistenceSchedulerType.PARALLEL : PersistenceSchedulerType.BOUNDED_ELASTIC, partitionParallelism);
+        InMemoryConsumerTemplate template = new InMemoryConsumerTemplate(records);
+        consumerService = new KafkaConsumerService(template,
+                Mappers.getMapper(ProductMapper.class), productBatchWriter, productColumnsPool,
+                recentProductCache, batchController, consumerMetrics, new ConsumerLogging(0, true),
+                new ConsumerFlowController(template, new ConsumerLagMonitor(template, consumerMetrics, Duration.ofSeconds(5)),
+                        batchController, consumerMetrics, true, 4, 20_000, Duration.ofSeconds(1), Duration.ofSeconds(1)),
+                null, // no bootstrap, consume() is not called
+                persistenceScheduler, partitionParallelism, 4, columnar, false, Duration.ofSeconds(5));
+    }
+
+    @TearDown
+    public void tearDown() {
+        persistenceScheduler.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public Long consumeProducts() {
+        return consumerService.consumeProducts().count().block();
+    }
+
+    private static ProductRepository countingRepository() {
+        return (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("upsertAll")) {
+                        return Mono.just((long) ((List<?>) args[0]).size());
+                    }
+                    if (method.getName().equals("upsertColumns")) {
+                        ProductColumns columns = (ProductColumns) args[0];
+                        return Mono.fromCallable(() -> (long) columns.copyPayload().remaining()); // render as COPY would
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static class InMemoryConsumerTemplate extends ReactiveKafkaConsumerTemplate<String, ProductDto> {
+
+        private final List<ReceiverRecord<String, ProductDto>> records;
+
+        InMemoryConsumerTemplate(List<ReceiverRecord<String, ProductDto>> records) {
+            super(ReceiverOptions.<String, ProductDto>create(Map.of(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092"))
+                    .subscription(List.of(TOPIC)));
+            this.records = records;
+        }
+
+        @Override
+        public Flux<ReceiverRecord<String, ProductDto>> receive() {
+            return Flux.fromIterable(records);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.nordcloud.kafkaservice.service;
+
+import org.apache.kafka.common.TopicPartition;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverOffset;
+
+class InMemoryReceiverOffset implements ReceiverOffset {
+
+    private final TopicPartition topicPartition;
+    private final long offset;
+
+    InMemoryReceiverOffset(TopicPartition topicPartition, long offset) {
+        this.topicPartition = topicPartition;
+        this.offset = offset;
+    }
+
+    @Override
+    public TopicPartition topicPartition() {
+        return topicPartition;
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public void acknowledge() {
+    }
+
+    @Override
+    public Mono<Void> commit() {
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,156 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
+import com.nordcloud.kafkaservice.codec.ProductDtoSerializer;
+import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.kafka.sender.SenderOptions;
+import reactor.kafka.sender.SenderRecord;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second relayed from an input to an output topic at-least-once (batch, send, commit the offsets)
+ * and exactly-once through {@link ExactlyOnceProductRelay}, offsets committed in the Kafka transaction. Nothing is
+ * written to Postgres, the numbers show the cost of the transactions alone. Needs the Kafka of the docker compose
+ * setup, or the one named by {@code -Dbenchmark.kafka=host:port}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProductRelayBenchmark {
+
+    static final int RECORDS = 10_000;
+    static final int BATCH_SIZE = 500;
+
+    @Param({"AT_LEAST_ONCE", "EXACTLY_ONCE"})
+    public String guarantee;
+
+    private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+    private String bootstrapServers;
+    private String inputTopic;
+    private String outputTopic;
+    private ReactiveKafkaProducerTemplate<String, ProductDto> producerTemplate;
+    private ReactiveKafkaProducerTemplate<String, ProductDto> transactionalProducerTemplate;
+
+    @Setup
+    public void setUp() {
+        bootstrapServers = System.getProperty("benchmark.kafka", "localhost:9092");
+        String run = UUID.randomUUID().toString();
+        inputTopic = "benchmark.relay.in." + run;
+        outputTopic = "benchmark.relay.out." + run;
+        SenderOptions<String, ProductDto> senderOptions = SenderOptions.<String, ProductDto>create(producerProperties())
+                .stopOnError(true);
+        producerTemplate = new ReactiveKafkaProducerTemplate<>(senderOptions);
+        transactionalProducerTemplate = new ReactiveKafkaProducerTemplate<>(senderOptions
+                .producerProperty(ProducerConfig.TRANSACTIONAL_ID_CONFIG, "benchmark-" + run));
+
+        producerTemplate.send(Flux.range(0, RECORDS).map(i -> {
+                    String uuid = UUID.randomUUID().toString();
+                    return SenderRecord.<String, ProductDto, Void>create(inputTopic, null, null, uuid,
+                            new ProductDto(uuid, "Prod-" + uuid, "Prod-" + uuid, (double) i), null);
+                }))
+                .blockLast(); // the input topic is read again by every invocation
+    }
+
+    @TearDown
+    public void tearDown() {
+        producerTemplate.close();
+        transactionalProducerTemplate.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public Integer relay() {
+        ReactiveKafkaConsumerTemplate<String, ProductDto> consumerTemplate = newConsumerTemplate();
+        Flux<Integer> relayed = guarantee.equals("EXACTLY_ONCE")
+                ? exactlyOnce(consumerTemplate)
+                : atLeastOnce(consumerTemplate);
+        return relayed
+                .scan(Integer::sum)
+                .takeUntil(total -> total >= RECORDS)
+                .blockLast();
+    }
+
+    private Flux<Integer> exactlyOnce(ReactiveKafkaConsumerTemplate<String, ProductDto> consumerTemplate) {
+        ConsumerMetrics consumerMetrics = new ConsumerMetrics(new SimpleMeterRegistry(), inputTopic);
+        return new ExactlyOnceProductRelay(consumerTemplate, transactionalProducerTemplate, productMapper,
+                null, // not persisted
+                new DeadLetterPublisher(producerTemplate, inputTopic + ".DLT"),
+                null, // relay() is measured without the bootstrap
+                consumerMetrics, outputTopic, false, Duration.ofSeconds(5))
+                .relay();
+    }
+
+    private Flux<Integer> atLeastOnce(ReactiveKafkaConsumerTemplate<String, ProductDto> consumerTemplate) {
+        return consumerTemplate.receive()
+                .bufferTimeout(BATCH_SIZE, Duration.ofMillis(100))
+                .concatMap(records -> producerTemplate
+                        .send(Flux.fromIterable(records).map(receiverRecord -> SenderRecord.<String, ProductDto, Void>create(
+                                outputTopic, null, null, receiverRecord.key(),
+                                productMapper.toProductDto(productMapper.toProduct(receiverRecord.value())), null)))
+                        .then(Mono.defer(() -> commit(records))) // once the batch is sent
+                        .thenReturn(records.size()));
+    }
+
+    private static Mono<Void> commit(List<ReceiverRecord<String, ProductDto>> records) {
+        records.forEach(receiverRecord -> receiverRecord.receiverOffset().acknowledge());
+        return records.get(records.size() - 1).receiverOffset().commit();
+    }
+
+    private ReactiveKafkaConsumerTemplate<String, ProductDto> newConsumerTemplate() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.put(ConsumerConfig.GROUP_ID_CONFIG, "benchmark-" + UUID.randomUUID()); // reads from the start
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, BATCH_SIZE);
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ProductDtoDeserializer.class);
+        properties.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        properties.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ProductDto.class.getName());
+        properties.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        return new ReactiveKafkaConsumerTemplate<>(ReceiverOptions.<String, ProductDto>create(properties)
+                .subscription(List.of(inputTopic)));
+    }
+
+    private Map<String, Object> producerProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ProductDtoSerializer.class);
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        properties.put(ProducerConfig.ACKS_CONFIG, "all");
+        return properties;
+    }
+}
@@ -1,10 +1,15 @@
 package com.nordcloud.kafkaservice;
 
+import com.nordcloud.kafkaservice.repository.ProductPartitioning;
 import io.r2dbc.spi.ConnectionFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
 import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
@@ -13,15 +18,25 @@ import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
 public class KafkaServiceApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(KafkaServiceApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(KafkaServiceApplication.class, args);
+        if (context.getEnvironment().getProperty("startup.exitOnReady", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context)); // training run of the CDS archive, dumped at exit
+        }
     }
 
+    /**
+     * Creates the product table on boot, skipped with {@code persistence.initSchema=false} when the schema is
+     * already in place. Eager even with lazy initialization, nothing else would ever ask for it.
+     */
     @Bean
-    ConnectionFactoryInitializer initializer(@Qualifier("connectionFactory") ConnectionFactory connectionFactory) {
+    @Lazy(false)
+    @ConditionalOnProperty(name = "persistence.initSchema", havingValue = "true", matchIfMissing = true)
+    ConnectionFactoryInitializer initializer(@Qualifier("connectionFactory") ConnectionFactory connectionFactory,
+                                             @Value("${persistence.partitioning:NONE}") ProductPartitioning partitioning) {
         ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
         initializer.setConnectionFactory(connectionFactory);
         ResourceDatabasePopulator resource =
-                new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+                new ResourceDatabasePopulator(new ClassPathResource(partitioning.getSchema()));
         initializer.setDatabasePopulator(resource);
 
         return initializer;
@@ -0,0 +1,69 @@
+package com.nordcloud.kafkaservice.codec;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire formats of {@link com.nordcloud.kafkaservice.model.dto.ProductDto}. Every record carries its format and
+ * schema version in the {@value #HEADER} header, so JSON and binary producers can coexist during a rollout.
+ * Records without the header are legacy JSON. Binary records are stamped with the version of their payload,
+ * {@link #BINARY_V2} for products carrying a send time, so consumers not yet reading version 2 can tell them apart.
+ */
+public enum ProductCodec {
+
+    JSON("json"),
+    BINARY("binary-v1"),
+    BINARY_V2("binary-v2");
+
+    public static final String HEADER = "product-codec";
+
+    /** serializer config selecting the format written by producers */
+    public static final String CONFIG = "product.codec";
+
+    private final String headerValue;
+    private final byte[] headerBytes;
+
+    ProductCodec(String headerValue) {
+        this.headerValue = headerValue;
+        this.headerBytes = headerValue.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] headerBytes() {
+        return headerBytes;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * @return the header value of a binary record, per payload version, or this codec for JSON
+     */
+    public ProductCodec stamp(ProductDto productDto) {
+        if (!isBinary()) {
+            return this;
+        }
+        return productDto.getSentAt() == null ? BINARY : BINARY_V2;
+    }
+
+    public static ProductCodec fromConfig(Object value) {
+        return value == null ? JSON : valueOf(value.toString().trim().toUpperCase());
+    }
+
+    public static ProductCodec fromHeaders(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(HEADER);
+        if (header == null) {
+            return JSON;
+        }
+        String value = new String(header.value(), StandardCharsets.UTF_8);
+        for (ProductCodec codec : values()) {
+            if (codec.headerValue.equals(value)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported " + HEADER + " header: " + value);
+    }
+}
@@ -0,0 +1,89 @@
+package com.nordcloud.kafkaservice.codec;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed layout binary form of {@link ProductDto}, written and read straight over a {@link ByteBuffer}:
+ * <pre>
+ * byte   version
+ * byte   null flags, bit 0 set when price is present
+ * double price
+ * long   send time, version 2 only
+ * int    uuid length, -1 for null, followed by the UTF-8 bytes, same for name and description
+ * </pre>
+ * Version 2 is only written for products stamped with a send time, under the {@code binary-v2} codec header,
+ * everything else keeps the version 1 layout that consumers not yet reading version 2 understand.
+ */
+public final class ProductDtoBinaryCodec {
+
+    static final byte VERSION = 1;
+    static final byte VERSION_SENT_AT = 2;
+
+    private static final int HEADER_SIZE = 1 + 1 + Double.BYTES;
+    private static final byte PRICE_PRESENT = 1;
+    private static final int NULL_LENGTH = -1;
+
+    private ProductDtoBinaryCodec() {
+    }
+
+    public static byte[] encode(ProductDto productDto) {
+        byte[] uuid = utf8(productDto.getUuid());
+        byte[] name = utf8(productDto.getName());
+        byte[] description = utf8(productDto.getDescription());
+        Long sentAt = productDto.getSentAt();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (sentAt == null ? 0 : Long.BYTES)
+                + length(uuid) + length(name) + length(description));
+        buffer.put(sentAt == null ? VERSION : VERSION_SENT_AT)
+                .put(productDto.getPrice() == null ? 0 : PRICE_PRESENT)
+                .putDouble(productDto.getPrice() == null ? 0D : productDto.getPrice());
+        if (sentAt != null) {
+            buffer.putLong(sentAt);
+        }
+        putString(buffer, uuid);
+        putString(buffer, name);
+        putString(buffer, description);
+        return buffer.array();
+    }
+
+    public static ProductDto decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte version = buffer.get();
+        if (version != VERSION && version != VERSION_SENT_AT) {
+            throw new IllegalArgumentException("Unsupported binary product version " + version);
+        }
+        boolean pricePresent = (buffer.get() & PRICE_PRESENT) != 0;
+        double price = buffer.getDouble();
+        Long sentAt = version == VERSION_SENT_AT ? buffer.getLong() : null;
+        return new ProductDto(getString(buffer), getString(buffer), getString(buffer), pricePresent ? price : null, sentAt);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        // decode in place from the backing array, no intermediate copy
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
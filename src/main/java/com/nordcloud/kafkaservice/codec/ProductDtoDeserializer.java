@@ -0,0 +1,69 @@
+package com.nordcloud.kafkaservice.codec;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Reads {@link ProductDto} in whichever format the {@value ProductCodec#HEADER} header names, falling back to
+ * JSON for records written before the header existed.
+ * <p>
+ * A value that can not be decoded (unknown codec header or binary version, corrupt payload) is read as null, with
+ * the failure in the {@value #ERROR_HEADER} header and the raw payload in the {@value #VALUE_HEADER} header, so a
+ * single poison record is dead-lettered instead of failing every poll from its offset on.
+ */
+public class ProductDtoDeserializer implements Deserializer<ProductDto> {
+
+    public static final String ERROR_HEADER = "product-decode-error";
+    public static final String VALUE_HEADER = "product-decode-value";
+
+    private final JsonDeserializer<ProductDto> jsonDeserializer = new JsonDeserializer<>(); // configured like the former value-deserializer
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public ProductDto deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public ProductDto deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return ProductCodec.fromHeaders(headers).isBinary()
+                    ? ProductDtoBinaryCodec.decode(data)
+                    : jsonDeserializer.deserialize(topic, headers, data);
+        } catch (RuntimeException e) {
+            if (headers == null) {
+                throw e; // nowhere to flag the failure
+            }
+            headers.add(ERROR_HEADER, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+            headers.add(VALUE_HEADER, data);
+            return null;
+        }
+    }
+
+    /**
+     * @return the failure of a record whose value could not be decoded, null for every other record
+     */
+    public static IllegalArgumentException decodeError(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(ERROR_HEADER);
+        return header == null ? null : new IllegalArgumentException(
+                "Undecodable product value: " + new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+}
@@ -0,0 +1,48 @@
+package com.nordcloud.kafkaservice.codec;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+
+/**
+ * Writes {@link ProductDto} in the format selected by the {@value ProductCodec#CONFIG} producer property
+ * (json by default) and stamps it in the {@value ProductCodec#HEADER} header, binary with its payload version.
+ */
+public class ProductDtoSerializer implements Serializer<ProductDto> {
+
+    private final JsonSerializer<ProductDto> jsonSerializer = new JsonSerializer<>();
+    private ProductCodec codec = ProductCodec.JSON;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        codec = ProductCodec.fromConfig(configs.get(ProductCodec.CONFIG));
+        jsonSerializer.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, ProductDto data) {
+        return serialize(topic, null, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, ProductDto data) {
+        if (data == null) {
+            return null;
+        }
+        if (headers != null) {
+            headers.remove(ProductCodec.HEADER);
+            headers.add(ProductCodec.HEADER, codec.stamp(data).headerBytes());
+        }
+        return codec.isBinary()
+                ? ProductDtoBinaryCodec.encode(data)
+                : jsonSerializer.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+    }
+}
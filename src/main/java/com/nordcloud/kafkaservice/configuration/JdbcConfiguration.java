@@ -0,0 +1,45 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import com.nordcloud.kafkaservice.repository.JdbcProductRepository;
+import com.nordcloud.kafkaservice.repository.ProductPartitions;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * JDBC write path, enabled with {@code persistence.driver=JDBC}. The R2DBC repository stays in place for reads,
+ * only the batch writes of the consumer move to JDBC.
+ */
+@Configuration
+@ConditionalOnProperty(name = "persistence.driver", havingValue = "JDBC")
+@ConsumerRole
+public class JdbcConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource jdbcDataSource(@Value("${persistence.jdbc.url}") String url,
+                                           @Value("${persistence.jdbc.username}") String username,
+                                           @Value("${persistence.jdbc.password}") String password,
+                                           @Value("${persistence.jdbc.poolSize:10}") int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize); // bounds the blocking writes in flight, whatever the scheduler
+        config.setPoolName("product-jdbc");
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    @Primary
+    public JdbcProductRepository jdbcProductRepository(HikariDataSource jdbcDataSource,
+                                                       @Qualifier("persistenceScheduler") Scheduler persistenceScheduler,
+                                                       ProductPartitions productPartitions) {
+        return new JdbcProductRepository(jdbcDataSource, persistenceScheduler, productPartitions);
+    }
+}
@@ -1,10 +1,15 @@
 package com.nordcloud.kafkaservice.configuration;
 
 import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
 import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
 import reactor.kafka.receiver.ReceiverOptions;
@@ -12,11 +17,13 @@ import reactor.kafka.sender.SenderOptions;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.UUID;
 
 @Configuration
 public class KafkaConfiguration {
 
     @Bean
+    @ConsumerRole
     public ReceiverOptions<String, ProductDto> kafkaReceiverOptions(@Value(value = "${product.topic}") String topic,
                                                                     KafkaProperties kafkaProperties) {
         ReceiverOptions<String, ProductDto> basicReceiverOptions = ReceiverOptions.create(kafkaProperties.buildConsumerProperties());
@@ -24,14 +31,72 @@ public class KafkaConfiguration {
     }
 
     @Bean
+    @ConsumerRole
     public ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate(ReceiverOptions<String, ProductDto> kafkaReceiverOptions) {
         return new ReactiveKafkaConsumerTemplate<>(kafkaReceiverOptions);
     }
 
     @Bean
-    public ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate(
-            KafkaProperties properties) {
+    public SenderOptions<String, ProductDto> kafkaSenderOptions(KafkaProperties properties,
+                                                               @Value("${producer.maxInFlight:1024}") int maxInFlight,
+                                                               @Value("${producer.lingerMs:5}") int lingerMs,
+                                                               @Value("${producer.batchSize:65536}") int batchSize,
+                                                               @Value("${producer.compressionType:lz4}") String compressionType,
+                                                               @Value("${producer.idempotence:true}") boolean idempotence,
+                                                               @Value("${producer.partitioner:}") String partitioner) {
         Map<String, Object> props = properties.buildProducerProperties();
-        return new ReactiveKafkaProducerTemplate<>(SenderOptions.create(props));
+        if (!partitioner.isBlank()) {
+            props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, partitioner); // the murmur2 hash of the key otherwise
+        }
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotence);
+        if (idempotence) {
+            props.put(ProducerConfig.ACKS_CONFIG, "all"); // required by the idempotent producer
+        }
+        return SenderOptions.<String, ProductDto>create(props)
+                .maxInFlight(maxInFlight) // bounds unacknowledged records per sender pipeline
+                .stopOnError(false); // report failed records in the results instead of failing the pipeline
+    }
+
+    /**
+     * Product topic created compacted, so it keeps at least the latest record of every uuid. An existing topic is
+     * left as it is.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "product.compacted", havingValue = "true")
+    public NewTopic productTopic(@Value("${product.topic}") String topic,
+                                 @Value("${product.topicPartitions:16}") int partitions,
+                                 @Value("${product.topicReplicas:1}") int replicas) {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .replicas(replicas)
+                .compact()
+                .build();
+    }
+
+    @Bean
+    @Primary
+    public ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate(
+            SenderOptions<String, ProductDto> kafkaSenderOptions) {
+        return new ReactiveKafkaProducerTemplate<>(kafkaSenderOptions);
+    }
+
+    /**
+     * Producer of the exactly-once relay. The transactional id is unique per instance, zombie producers are fenced
+     * through the consumer group metadata sent with the offsets. A failed send fails the transaction.
+     */
+    @Bean
+    @ConsumerRole
+    @ConditionalOnProperty(name = "consumer.exactlyOnce.enabled", havingValue = "true")
+    public ReactiveKafkaProducerTemplate<String, ProductDto> transactionalKafkaProducerTemplate(
+            SenderOptions<String, ProductDto> kafkaSenderOptions,
+            @Value("${producer.transactionalIdPrefix:kafka-service-}") String transactionalIdPrefix) {
+        return new ReactiveKafkaProducerTemplate<>(kafkaSenderOptions
+                .producerProperty(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalIdPrefix + UUID.randomUUID())
+                .producerProperty(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true) // required by transactions
+                .producerProperty(ProducerConfig.ACKS_CONFIG, "all")
+                .stopOnError(true));
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.nordcloud.kafkaservice.configuration;
+
+/**
+ * Threads running the persistence stage of the consumer.
+ */
+public enum PersistenceSchedulerType {
+
+    /** elastic pool of at most {@code consumer.partitionParallelism} platform threads, 10 per core when 0 */
+    BOUNDED_ELASTIC,
+    /** fixed pool of {@code consumer.partitionParallelism} platform threads, one per core when 0 */
+    PARALLEL,
+    /** one virtual thread per task on Java 21+, for blocking writers such as JDBC */
+    VIRTUAL
+}
@@ -0,0 +1,22 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import org.springframework.context.annotation.Profile;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Components of the producing side, sending products to {@code product.topic}. Left out of nodes started with the
+ * {@code consumer} profile, a node without role profile runs both sides.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Profile("!" + ConsumerRole.PROFILE)
+public @interface ProducerRole {
+
+    String PROFILE = "producer";
+}
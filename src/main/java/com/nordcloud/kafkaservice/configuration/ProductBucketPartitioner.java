@@ -0,0 +1,33 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import com.nordcloud.kafkaservice.repository.ProductPartitions;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Partitions product records by the bucket of their uuid key, the bucket function of
+ * {@code persistence.partitioning=HASH}. With as many topic partitions as {@code persistence.partitions}, every
+ * partition rail of the consumer writes into a single partition table. Selected with
+ * {@code producer.partitioner=com.nordcloud.kafkaservice.configuration.ProductBucketPartitioner}.
+ */
+public class ProductBucketPartitioner implements Partitioner {
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int partitions = cluster.partitionCountForTopic(topic);
+        return key == null
+                ? ThreadLocalRandom.current().nextInt(partitions) // unkeyed records have no order to keep
+                : ProductPartitions.bucket(key.toString(), partitions);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
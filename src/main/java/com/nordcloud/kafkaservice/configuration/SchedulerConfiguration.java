@@ -0,0 +1,56 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@Slf4j
+@ConsumerRole
+public class SchedulerConfiguration {
+
+    /**
+     * Scheduler of the persistence stage, shared by the R2DBC and JDBC writers so both run the same pipeline.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler persistenceScheduler(@Value("${consumer.scheduler:BOUNDED_ELASTIC}") PersistenceSchedulerType type,
+                                          @Value("${consumer.partitionParallelism:0}") int partitionParallelism,
+                                          ConsumerMetrics consumerMetrics) {
+        return consumerMetrics.timed(createScheduler(type, partitionParallelism), "persistence");
+    }
+
+    public static Scheduler createScheduler(PersistenceSchedulerType type, int parallelism) {
+        return switch (type) {
+            case BOUNDED_ELASTIC -> Schedulers.newBoundedElastic(
+                    parallelism > 0 ? parallelism : Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                    Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "persistence-elastic");
+            case PARALLEL -> Schedulers.newParallel("persistence-parallel",
+                    parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+            case VIRTUAL -> virtualThreadExecutor()
+                    .map(executor -> Schedulers.fromExecutorService(executor, "persistence-virtual"))
+                    .orElseGet(() -> {
+                        log.warn("Virtual threads need Java 21, falling back to a bounded elastic persistence scheduler");
+                        return createScheduler(PersistenceSchedulerType.BOUNDED_ELASTIC, parallelism);
+                    });
+        };
+    }
+
+    /**
+     * Looked up reflectively, the application is still built for Java 17.
+     */
+    static Optional<ExecutorService> virtualThreadExecutor() {
+        try {
+            return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+}
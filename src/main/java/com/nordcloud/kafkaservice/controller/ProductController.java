@@ -0,0 +1,47 @@
+package com.nordcloud.kafkaservice.controller;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.service.ProductQueryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/products")
+public class ProductController {
+
+    private final ProductQueryService productQueryService;
+
+    public ProductController(ProductQueryService productQueryService) {
+        this.productQueryService = productQueryService;
+    }
+
+    @GetMapping("/{uuid}")
+    public Mono<ProductDto> findByUuid(@PathVariable String uuid) {
+        return productQueryService.findByUuid(uuid)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+    }
+
+    @GetMapping("/id/{id}")
+    public Mono<ProductDto> findById(@PathVariable int id) {
+        return productQueryService.findById(id)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+    }
+
+    /**
+     * Products with a price in [minPrice, maxPrice], ordered by price, one page at a time.
+     */
+    @GetMapping
+    public Flux<ProductDto> findByPriceRange(@RequestParam(defaultValue = "0") double minPrice,
+                                             @RequestParam(required = false) Double maxPrice,
+                                             @RequestParam(defaultValue = "0") int page,
+                                             @RequestParam(defaultValue = "100") int size) {
+        return productQueryService.findByPriceRange(minPrice, maxPrice != null ? maxPrice : Double.MAX_VALUE, page, size);
+    }
+}
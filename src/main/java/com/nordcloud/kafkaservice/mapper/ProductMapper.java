@@ -3,9 +3,13 @@ package com.nordcloud.kafkaservice.mapper;
 import com.nordcloud.kafkaservice.model.dto.ProductDto;
 import com.nordcloud.kafkaservice.model.entity.Product;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 @Mapper(componentModel = "spring")
 public interface ProductMapper {
 
     Product toProduct(ProductDto productDto);
+
+    @Mapping(target = "sentAt", ignore = true) // stamped by the load generator only
+    ProductDto toProductDto(Product product);
 }
@@ -0,0 +1,181 @@
+package com.nordcloud.kafkaservice.metrics;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the consume, map, buffer and save stages. Per partition meters are created once and cached, so the
+ * record path does not build tags.
+ */
+@Component
+public class ConsumerMetrics {
+
+    public static final String PREFIX = "product.consumer";
+
+    private final MeterRegistry registry;
+    private final String topic;
+    private final Map<TopicPartition, Counter> receivedRecords = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, AtomicLong> lags = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+    private final Timer writeTimer;
+    private final Counter writtenRecords;
+    private final Counter spooledProducts;
+    private final Counter drainedProducts;
+    private final Timer transactionTimer;
+    private final Timer endToEndTimer;
+    private final Recorder endToEndRecorder = new Recorder(3); // microseconds, auto-resizing
+    private final Histogram endToEndLatency = new Histogram(3);
+
+    public ConsumerMetrics(MeterRegistry registry, @Value("${product.topic}") String topic) {
+        this.registry = registry;
+        this.topic = topic;
+        this.batchSize = DistributionSummary.builder(PREFIX + ".batch.size")
+                .description("Products per write batch")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.writeTimer = Timer.builder(PREFIX + ".write")
+                .description("Latency of writing one batch to the database")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.writtenRecords = Counter.builder(PREFIX + ".records.written")
+                .tag("topic", topic)
+                .register(registry);
+        this.spooledProducts = Counter.builder(PREFIX + ".spool.appended")
+                .description("Products spooled to disk while the database was unavailable")
+                .tag("topic", topic)
+                .register(registry);
+        this.drainedProducts = Counter.builder(PREFIX + ".spool.drained")
+                .description("Spooled products written to the database")
+                .tag("topic", topic)
+                .register(registry);
+        this.transactionTimer = Timer.builder(PREFIX + ".transaction")
+                .description("Latency of relaying one batch in a Kafka transaction, from poll to commit")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.endToEndTimer = Timer.builder(PREFIX + ".endToEnd")
+                .description("Latency of products stamped by the load generator, from send to database commit")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordReceived(TopicPartition topicPartition) {
+        receivedRecords.computeIfAbsent(topicPartition, key -> Counter.builder(PREFIX + ".records.received")
+                        .tags(partitionTags(key))
+                        .register(registry))
+                .increment();
+    }
+
+    public void batchWritten(int products, long writeNanos) {
+        batchSize.record(products);
+        writeTimer.record(writeNanos, TimeUnit.NANOSECONDS);
+        writtenRecords.increment(products);
+    }
+
+    public void spooled(int products) {
+        spooledProducts.increment(products);
+    }
+
+    public void drained(int products) {
+        drainedProducts.increment(products);
+    }
+
+    public void transactionCommitted(int products, long transactionNanos) {
+        batchSize.record(products);
+        transactionTimer.record(transactionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the end-to-end latency of the committed records that carry a send time, the others are skipped.
+     */
+    public void committed(Collection<? extends ConsumerRecord<?, ProductDto>> records) {
+        long now = 0;
+        for (ConsumerRecord<?, ProductDto> consumerRecord : records) {
+            ProductDto productDto = consumerRecord.value();
+            if (productDto != null && productDto.getSentAt() != null) {
+                if (now == 0) {
+                    now = epochMicros(Instant.now());
+                }
+                long latencyMicros = Math.max(0, now - productDto.getSentAt()); // clocks of other hosts may lag
+                endToEndRecorder.recordValue(latencyMicros);
+                endToEndTimer.record(latencyMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+    }
+
+    /**
+     * @return every end-to-end latency recorded so far, in microseconds
+     */
+    public synchronized Histogram endToEndLatency() {
+        endToEndLatency.add(endToEndRecorder.getIntervalHistogram());
+        return endToEndLatency.copy();
+    }
+
+    public static long epochMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+    }
+
+    public void error(String stage) {
+        errors.computeIfAbsent(stage, key -> Counter.builder(PREFIX + ".errors")
+                        .tags("topic", topic, "stage", key)
+                        .register(registry))
+                .increment();
+    }
+
+    public void lag(TopicPartition topicPartition, long lag) {
+        lags.computeIfAbsent(topicPartition, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder(PREFIX + ".lag", value, AtomicLong::get)
+                    .description("Records between the consumer position and the partition end")
+                    .tags(partitionTags(key))
+                    .register(registry);
+            return value;
+        }).set(lag);
+    }
+
+    /**
+     * Registers a gauge of a value owned by another component.
+     */
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(PREFIX + "." + name, value)
+                .description(description)
+                .tag("topic", topic)
+                .register(registry);
+    }
+
+    /**
+     * Wraps a scheduler so its task queueing, active and completed task meters show whether it saturates.
+     */
+    public Scheduler timed(Scheduler scheduler, String name) {
+        return Micrometer.timedScheduler(scheduler, registry, PREFIX + ".scheduler", Tags.of("name", name));
+    }
+
+    private static Tags partitionTags(TopicPartition topicPartition) {
+        return Tags.of("topic", topicPartition.topic(), "partition", String.valueOf(topicPartition.partition()));
+    }
+}
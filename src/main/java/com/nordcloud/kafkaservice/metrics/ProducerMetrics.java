@@ -0,0 +1,45 @@
+package com.nordcloud.kafkaservice.metrics;
+
+import com.nordcloud.kafkaservice.configuration.ProducerRole;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send latency, from handing the record to the sender until the broker acknowledged it, and send failures.
+ */
+@Component
+@ProducerRole
+public class ProducerMetrics {
+
+    public static final String PREFIX = "product.producer";
+
+    private final MeterRegistry registry;
+    private final Map<TopicPartition, Timer> sendTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> failures = new ConcurrentHashMap<>();
+
+    public ProducerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void sent(TopicPartition topicPartition, long sendNanos) {
+        sendTimers.computeIfAbsent(topicPartition, key -> Timer.builder(PREFIX + ".send")
+                        .tags("topic", key.topic(), "partition", String.valueOf(key.partition()))
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(sendNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void failed(String topic) {
+        failures.computeIfAbsent(topic, key -> Counter.builder(PREFIX + ".errors")
+                        .tag("topic", key)
+                        .register(registry))
+                .increment();
+    }
+}
@@ -0,0 +1,313 @@
+package com.nordcloud.kafkaservice.model.batch;
+
+import com.nordcloud.kafkaservice.model.entity.Product;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable columnar batch of products: prices in a primitive array and uuid, name and description as UTF-8 in one
+ * off-heap arena, addressed by offset and length per row. Rows are deduplicated on the uuid while they are added,
+ * the last product of a uuid wins and keeps the row of the first. Instances are pooled and cleared between batches,
+ * so once the arrays have grown to the batch size adding a product allocates nothing.
+ * <p>
+ * Not thread safe, a batch is filled and written by one rail at a time.
+ */
+public class ProductColumns {
+
+    public static final int UUID_COLUMN = 0;
+    public static final int NAME_COLUMN = 1;
+    public static final int DESCRIPTION_COLUMN = 2;
+
+    private static final int STRING_COLUMNS = 3;
+    private static final int NULL_LENGTH = -1;
+    private static final int EMPTY_SLOT = 0;
+    private static final int MAX_PRICE_CHARS = 32;
+
+    private int size;
+    private double[] prices;
+    private boolean[] priceNulls;
+    private int[] offsets; // row * STRING_COLUMNS + column
+    private int[] lengths;
+    private int[] slots; // open addressing table of uuid hash to row + 1
+    private ByteBuffer arena;
+    private ByteBuffer copyPayload;
+    private byte[] scratch = new byte[256];
+    private final StringBuilder number = new StringBuilder(MAX_PRICE_CHARS);
+
+    public ProductColumns(int rowCapacity, int arenaCapacity) {
+        int rows = Math.max(1, rowCapacity);
+        this.prices = new double[rows];
+        this.priceNulls = new boolean[rows];
+        this.offsets = new int[rows * STRING_COLUMNS];
+        this.lengths = new int[rows * STRING_COLUMNS];
+        this.slots = new int[tableSize(rows)];
+        this.arena = ByteBuffer.allocateDirect(Math.max(64, arenaCapacity));
+        this.copyPayload = ByteBuffer.allocateDirect(Math.max(64, arenaCapacity));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the product, or overwrites the row already holding its uuid.
+     *
+     * @return the row of the product
+     */
+    public int add(String uuid, String name, String description, Double price) {
+        if (uuid == null) {
+            throw new IllegalArgumentException("Product has no uuid");
+        }
+        ensureRowCapacity(size + 1);
+        int uuidOffset = arena.position();
+        int uuidLength = put(uuid);
+        int row = findRow(uuidOffset, uuidLength);
+        if (row < 0) {
+            row = insertRow(uuidOffset, uuidLength);
+            set(row, UUID_COLUMN, uuidOffset, uuidLength);
+        } else {
+            arena.position(uuidOffset); // the row keeps its uuid bytes, reclaim the copy
+        }
+        set(row, NAME_COLUMN, arena.position(), put(name));
+        set(row, DESCRIPTION_COLUMN, arena.position(), put(description));
+        priceNulls[row] = price == null;
+        prices[row] = price == null ? 0D : price;
+        return row;
+    }
+
+    public String getString(int row, int column) {
+        int index = row * STRING_COLUMNS + column;
+        int length = lengths[index];
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        arena.get(offsets[index], scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public boolean isPriceNull(int row) {
+        return priceNulls[row];
+    }
+
+    public double getPrice(int row) {
+        return prices[row];
+    }
+
+    /**
+     * Decodes one string column, for drivers binding arrays.
+     */
+    public String[] strings(int column) {
+        String[] values = new String[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = getString(row, column);
+        }
+        return values;
+    }
+
+    public Double[] boxedPrices() {
+        Double[] values = new Double[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = priceNulls[row] ? null : prices[row];
+        }
+        return values;
+    }
+
+    /**
+     * Materializes the rows as entities, for the paths that work per product.
+     */
+    public List<Product> toProducts() {
+        List<Product> products = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            products.add(new Product(null, getString(row, UUID_COLUMN), getString(row, NAME_COLUMN),
+                    getString(row, DESCRIPTION_COLUMN), priceNulls[row] ? null : prices[row]));
+        }
+        return products;
+    }
+
+    /**
+     * Renders the rows in the COPY text format straight from the arena into a reused off-heap buffer. Escaping
+     * works on bytes, as the escaped characters are all ASCII and never part of a multi-byte UTF-8 sequence.
+     * The buffer is overwritten by the next call.
+     */
+    public ByteBuffer copyPayload() {
+        int capacity = arena.position() * 2 + size * (MAX_PRICE_CHARS + 2 * STRING_COLUMNS + 2);
+        if (copyPayload.capacity() < capacity) {
+            copyPayload = ByteBuffer.allocateDirect(capacity);
+        }
+        copyPayload.clear();
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < STRING_COLUMNS; column++) {
+                putCopyValue(row * STRING_COLUMNS + column);
+                copyPayload.put((byte) '\t');
+            }
+            if (priceNulls[row]) {
+                copyPayload.put((byte) '\\').put((byte) 'N');
+            } else {
+                number.setLength(0);
+                number.append(prices[row]); // formats into the builder, no String per price
+                for (int i = 0; i < number.length(); i++) {
+                    copyPayload.put((byte) number.charAt(i));
+                }
+            }
+            copyPayload.put((byte) '\n');
+        }
+        return copyPayload.flip();
+    }
+
+    /**
+     * Empties the batch for reuse, keeping every buffer.
+     */
+    public void clear() {
+        size = 0;
+        arena.clear();
+        Arrays.fill(slots, EMPTY_SLOT);
+    }
+
+    private void putCopyValue(int index) {
+        int length = lengths[index];
+        if (length == NULL_LENGTH) {
+            copyPayload.put((byte) '\\').put((byte) 'N');
+            return;
+        }
+        int offset = offsets[index];
+        for (int i = 0; i < length; i++) {
+            byte b = arena.get(offset + i);
+            switch (b) {
+                case '\\' -> copyPayload.put((byte) '\\').put((byte) '\\');
+                case '\t' -> copyPayload.put((byte) '\\').put((byte) 't');
+                case '\n' -> copyPayload.put((byte) '\\').put((byte) 'n');
+                case '\r' -> copyPayload.put((byte) '\\').put((byte) 'r');
+                default -> copyPayload.put(b);
+            }
+        }
+    }
+
+    private void set(int row, int column, int offset, int length) {
+        offsets[row * STRING_COLUMNS + column] = offset;
+        lengths[row * STRING_COLUMNS + column] = length;
+    }
+
+    /**
+     * Encodes UTF-8 into the arena without an intermediate byte array, unpaired surrogates become '?' as in
+     * {@link String#getBytes}.
+     */
+    private int put(String value) {
+        if (value == null) {
+            return NULL_LENGTH;
+        }
+        ensureArenaCapacity(value.length() * 3);
+        int start = arena.position();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                arena.put((byte) c);
+            } else if (c < 0x800) {
+                arena.put((byte) (0xC0 | (c >> 6)))
+                        .put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                arena.put((byte) (0xF0 | (codePoint >> 18)))
+                        .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                        .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+                        .put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                arena.put((byte) '?');
+            } else {
+                arena.put((byte) (0xE0 | (c >> 12)))
+                        .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                        .put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return arena.position() - start;
+    }
+
+    private int findRow(int uuidOffset, int uuidLength) {
+        int mask = slots.length - 1;
+        for (int slot = hash(uuidOffset, uuidLength) & mask; slots[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+            int row = slots[slot] - 1;
+            if (uuidEquals(row, uuidOffset, uuidLength)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private int insertRow(int uuidOffset, int uuidLength) {
+        int row = size++;
+        int mask = slots.length - 1;
+        int slot = hash(uuidOffset, uuidLength) & mask;
+        while (slots[slot] != EMPTY_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = row + 1;
+        return row;
+    }
+
+    private boolean uuidEquals(int row, int uuidOffset, int uuidLength) {
+        int index = row * STRING_COLUMNS + UUID_COLUMN;
+        if (lengths[index] != uuidLength) {
+            return false;
+        }
+        int rowOffset = offsets[index];
+        for (int i = 0; i < uuidLength; i++) {
+            if (arena.get(rowOffset + i) != arena.get(uuidOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + arena.get(offset + i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private void ensureRowCapacity(int rows) {
+        if (rows > prices.length) {
+            int capacity = Math.max(rows, prices.length * 2);
+            prices = Arrays.copyOf(prices, capacity);
+            priceNulls = Arrays.copyOf(priceNulls, capacity);
+            offsets = Arrays.copyOf(offsets, capacity * STRING_COLUMNS);
+            lengths = Arrays.copyOf(lengths, capacity * STRING_COLUMNS);
+        }
+        if (rows * 2 > slots.length) {
+            slots = new int[tableSize(rows)];
+            for (int row = 0; row < size; row++) {
+                int index = row * STRING_COLUMNS + UUID_COLUMN;
+                int mask = slots.length - 1;
+                int slot = hash(offsets[index], lengths[index]) & mask;
+                while (slots[slot] != EMPTY_SLOT) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = row + 1;
+            }
+        }
+    }
+
+    private void ensureArenaCapacity(int bytes) {
+        if (arena.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(arena.capacity() * 2, arena.position() + bytes));
+            grown.put(arena.flip());
+            arena = grown;
+        }
+    }
+
+    private static int tableSize(int rows) {
+        return Integer.highestOneBit(Math.max(2, rows) * 2 - 1) << 1; // power of two, at most half full
+    }
+}
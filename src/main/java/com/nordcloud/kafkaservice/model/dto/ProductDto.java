@@ -1,5 +1,6 @@
 package com.nordcloud.kafkaservice.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,4 +16,11 @@ public class ProductDto {
     private String name;
     private String description;
     private Double price;
+    /** epoch microseconds the load generator sent the product at, absent on regular traffic */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long sentAt;
+
+    public ProductDto(String uuid, String name, String description, Double price) {
+        this(uuid, name, description, price, null);
+    }
 }
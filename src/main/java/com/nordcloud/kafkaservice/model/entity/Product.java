@@ -6,6 +6,8 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Column;
 
+import java.time.Instant;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -18,4 +20,11 @@ public class Product {
     private String name;
     private String description;
     private Double price;
+    /** set by the database when the product is written, the partition key of TIME partitioning */
+    @Column("ingested_at")
+    private Instant ingestedAt;
+
+    public Product(Integer id, String uuid, String name, String description, Double price) {
+        this(id, uuid, name, description, price, null);
+    }
 }
\ No newline at end of file
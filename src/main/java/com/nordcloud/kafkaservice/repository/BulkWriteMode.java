@@ -0,0 +1,16 @@
+package com.nordcloud.kafkaservice.repository;
+
+/**
+ * Strategy used to write a buffered batch of products.
+ */
+public enum BulkWriteMode {
+
+    /** one upsert statement per product, the round trip per entity of {@link ProductRepository#saveAll(Iterable)} */
+    PER_ROW,
+    /** one multi-row INSERT ... VALUES ... ON CONFLICT statement per batch */
+    MULTI_ROW,
+    /** one INSERT ... SELECT FROM unnest(arrays) ... ON CONFLICT statement per batch */
+    UNNEST,
+    /** Postgres COPY FROM STDIN into a transaction scoped staging table, merged with one upsert */
+    COPY
+}
@@ -0,0 +1,134 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Blocking JDBC counterpart of {@link ProductBulkRepositoryImpl}: every batch is one JDBC batch of the single row
+ * upsert per target table, in one transaction, which the driver rewrites into multi-row statements with
+ * {@code reWriteBatchedInserts=true}. Writes run on the persistence scheduler, meant to be
+ * {@code consumer.scheduler=VIRTUAL} so a blocked write parks a virtual thread instead of holding a platform one.
+ * The write mode is ignored, there is only the batch.
+ */
+public class JdbcProductRepository implements ProductBulkRepository {
+
+    private final DataSource dataSource;
+    private final Scheduler scheduler;
+    private final ProductPartitions partitions;
+
+    public JdbcProductRepository(DataSource dataSource, Scheduler scheduler, ProductPartitions partitions) {
+        this.dataSource = dataSource;
+        this.scheduler = scheduler;
+        this.partitions = partitions;
+    }
+
+    @Override
+    public Mono<Long> upsertAll(List<Product> products, BulkWriteMode mode) {
+        if (products.isEmpty()) {
+            return Mono.just(0L);
+        }
+        OffsetDateTime ingestedAt = partitions.now().atOffset(ZoneOffset.UTC);
+        Map<String, List<Product>> routed = partitions.route(products, ingestedAt.toInstant());
+        return ensure(routed.keySet())
+                .then(Mono.fromCallable(() -> executeBatch(routed.keySet(), ingestedAt, (table, statement) -> {
+                    for (Product product : routed.get(table)) {
+                        statement.setString(1, product.getUuid());
+                        statement.setString(2, product.getName());
+                        statement.setString(3, product.getDescription());
+                        statement.setObject(4, product.getPrice(), Types.DOUBLE);
+                        statement.setObject(5, ingestedAt);
+                        statement.addBatch();
+                    }
+                }, () -> products.stream().map(Product::getUuid).toArray(String[]::new))))
+                .subscribeOn(scheduler);
+    }
+
+    @Override
+    public Mono<Long> upsertColumns(ProductColumns columns, BulkWriteMode mode) {
+        if (columns.isEmpty()) {
+            return Mono.just(0L);
+        }
+        if (partitions.routesByUuid()) {
+            return upsertAll(columns.toProducts(), mode);
+        }
+        OffsetDateTime ingestedAt = partitions.now().atOffset(ZoneOffset.UTC);
+        Set<String> tables = Set.of(partitions.table(ingestedAt.toInstant()));
+        return ensure(tables)
+                .then(Mono.fromCallable(() -> executeBatch(tables, ingestedAt, (table, statement) -> {
+                    for (int row = 0; row < columns.size(); row++) {
+                        statement.setString(1, columns.getString(row, ProductColumns.UUID_COLUMN));
+                        statement.setString(2, columns.getString(row, ProductColumns.NAME_COLUMN));
+                        statement.setString(3, columns.getString(row, ProductColumns.DESCRIPTION_COLUMN));
+                        if (columns.isPriceNull(row)) {
+                            statement.setNull(4, Types.DOUBLE);
+                        } else {
+                            statement.setDouble(4, columns.getPrice(row)); // primitive, no boxing
+                        }
+                        statement.setObject(5, ingestedAt);
+                        statement.addBatch();
+                    }
+                }, () -> columns.strings(ProductColumns.UUID_COLUMN))))
+                .subscribeOn(scheduler);
+    }
+
+    private Mono<Void> ensure(Set<String> tables) {
+        return Flux.fromIterable(tables).concatMap(partitions::ensure).then();
+    }
+
+    /**
+     * One JDBC batch per target table, all in one transaction, together with the deletion of the versions written
+     * on earlier days with TIME partitioning.
+     */
+    private long executeBatch(Set<String> tables, OffsetDateTime ingestedAt, BatchBinder binder,
+                              Supplier<String[]> uuids) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long updated = 0;
+                for (String table : tables) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            ProductStatements.of(table).jdbcSingleUpsert)) {
+                        binder.bind(table, statement);
+                        for (int count : statement.executeBatch()) {
+                            updated += count == Statement.SUCCESS_NO_INFO ? 1 : count; // rewritten batches report no counts
+                        }
+                    }
+                }
+                if (partitions.supersedesEarlierDays()) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            ProductStatements.JDBC_DELETE_EARLIER_VERSIONS)) {
+                        statement.setArray(1, connection.createArrayOf("varchar", uuids.get()));
+                        statement.setObject(2, partitions.dayStart(ingestedAt.toInstant()).atOffset(ZoneOffset.UTC));
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+                return updated;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BatchBinder {
+        void bind(String table, PreparedStatement statement) throws SQLException;
+    }
+}
@@ -0,0 +1,26 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ProductBulkRepository {
+
+    /**
+     * Inserts or updates the whole batch keyed on the product uuid, in a single round trip for the bulk modes
+     * (chunked only above the Postgres bind parameter limit). Uuids have to be unique within the list, as one
+     * upsert statement can not touch the same row twice.
+     *
+     * @return number of inserted or updated rows
+     */
+    Mono<Long> upsertAll(List<Product> products, BulkWriteMode mode);
+
+    /**
+     * Same as {@link #upsertAll(List, BulkWriteMode)} for a columnar batch, whose uuids are unique already.
+     * {@link BulkWriteMode#COPY} streams the rows from the off-heap columns without materializing a product,
+     * {@link BulkWriteMode#UNNEST} binds the columns as arrays and the other modes write materialized products.
+     */
+    Mono<Long> upsertColumns(ProductColumns columns, BulkWriteMode mode);
+}
@@ -0,0 +1,238 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Wrapped;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class ProductBulkRepositoryImpl implements ProductBulkRepository {
+
+    static final String CREATE_COPY_STAGE = "CREATE TEMPORARY TABLE product_stage "
+            + "(uuid VARCHAR(255), p_name VARCHAR(255), description VARCHAR(255), price DOUBLE PRECISION) ON COMMIT DROP";
+    static final String COPY_IN = "COPY product_stage (uuid, p_name, description, price) FROM STDIN";
+
+    private static final int COLUMNS = 4;
+    private static final int MAX_ROWS_PER_STATEMENT = (65535 - 1) / COLUMNS; // Postgres bind parameter limit, ingest time included
+
+    private final ConnectionFactory connectionFactory;
+    private final DatabaseClient databaseClient;
+    private final ProductPartitions partitions;
+
+    public ProductBulkRepositoryImpl(ConnectionFactory connectionFactory, ProductPartitions partitions) {
+        this.connectionFactory = connectionFactory;
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        this.partitions = partitions;
+    }
+
+    /**
+     * Every partition of the batch is written with its own statements, one after the other.
+     */
+    @Override
+    public Mono<Long> upsertAll(List<Product> products, BulkWriteMode mode) {
+        if (products.isEmpty()) {
+            return Mono.just(0L);
+        }
+        OffsetDateTime ingestedAt = partitions.now().atOffset(ZoneOffset.UTC);
+        return Flux.fromIterable(partitions.route(products, ingestedAt.toInstant()).entrySet())
+                .concatMap(partition -> partitions.ensure(partition.getKey())
+                        .then(upsertAll(ProductStatements.of(partition.getKey()), partition.getValue(), mode, ingestedAt)))
+                .reduce(0L, Long::sum)
+                .flatMap(rows -> deleteEarlierVersions(() -> uuids(products), ingestedAt).thenReturn(rows));
+    }
+
+    /**
+     * Batches partitioned by uuid are materialized and split per partition, the others are written from the columns.
+     */
+    @Override
+    public Mono<Long> upsertColumns(ProductColumns columns, BulkWriteMode mode) {
+        if (columns.isEmpty()) {
+            return Mono.just(0L);
+        }
+        if (partitions.routesByUuid()) {
+            return upsertAll(columns.toProducts(), mode);
+        }
+        OffsetDateTime ingestedAt = partitions.now().atOffset(ZoneOffset.UTC);
+        String table = partitions.table(ingestedAt.toInstant());
+        ProductStatements statements = ProductStatements.of(table);
+        return partitions.ensure(table).then(switch (mode) {
+            case UNNEST -> upsertUnnest(statements, columns.strings(ProductColumns.UUID_COLUMN),
+                    columns.strings(ProductColumns.NAME_COLUMN), columns.strings(ProductColumns.DESCRIPTION_COLUMN),
+                    columns.boxedPrices(), ingestedAt);
+            case COPY -> copyIn(statements, Mono.fromCallable(columns::copyPayload), ingestedAt); // rendered again on every retry
+            default -> upsertAll(statements, columns.toProducts(), mode, ingestedAt);
+        }).flatMap(rows -> deleteEarlierVersions(() -> columns.strings(ProductColumns.UUID_COLUMN), ingestedAt)
+                .thenReturn(rows));
+    }
+
+    /**
+     * Deletes the versions of the uuids written on earlier days with TIME partitioning, after the upsert so a
+     * uuid is never missing. A write failing in between leaves the older row until the uuid is written again,
+     * {@code findByUuid} reads the latest one.
+     */
+    private Mono<Long> deleteEarlierVersions(Supplier<String[]> uuids, OffsetDateTime ingestedAt) {
+        if (!partitions.supersedesEarlierDays()) {
+            return Mono.just(0L);
+        }
+        return databaseClient.sql(ProductStatements.DELETE_EARLIER_VERSIONS)
+                .bind(0, uuids.get())
+                .bind(1, partitions.dayStart(ingestedAt.toInstant()).atOffset(ZoneOffset.UTC))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static String[] uuids(List<Product> products) {
+        String[] uuids = new String[products.size()];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = products.get(i).getUuid();
+        }
+        return uuids;
+    }
+
+    private Mono<Long> upsertAll(ProductStatements statements, List<Product> products, BulkWriteMode mode,
+                                 OffsetDateTime ingestedAt) {
+        return switch (mode) {
+            case PER_ROW -> Flux.fromIterable(products)
+                    .concatMap(product -> upsertRow(statements, product, ingestedAt))
+                    .reduce(0L, Long::sum);
+            case MULTI_ROW -> Flux.range(0, (products.size() + MAX_ROWS_PER_STATEMENT - 1) / MAX_ROWS_PER_STATEMENT)
+                    .concatMap(chunk -> upsertMultiRow(statements, products.subList(chunk * MAX_ROWS_PER_STATEMENT,
+                            Math.min(products.size(), (chunk + 1) * MAX_ROWS_PER_STATEMENT)), ingestedAt))
+                    .reduce(0L, Long::sum);
+            case UNNEST -> upsertUnnest(statements, products, ingestedAt);
+            case COPY -> copyIn(statements, Mono.fromCallable(() -> StandardCharsets.UTF_8.encode(copyPayload(products))),
+                    ingestedAt);
+        };
+    }
+
+    private Mono<Long> upsertRow(ProductStatements statements, Product product, OffsetDateTime ingestedAt) {
+        return databaseClient.sql(statements.singleUpsert)
+                .bind(0, product.getUuid())
+                .bind(1, product.getName())
+                .bind(2, product.getDescription())
+                .bind(3, product.getPrice())
+                .bind(4, ingestedAt)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<Long> upsertMultiRow(ProductStatements statements, List<Product> products, OffsetDateTime ingestedAt) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(statements.multiRowUpsert(products.size()));
+        int index = 0;
+        for (Product product : products) {
+            spec = spec.bind(index++, product.getUuid())
+                    .bind(index++, product.getName())
+                    .bind(index++, product.getDescription())
+                    .bind(index++, product.getPrice());
+        }
+        return spec.bind(index, ingestedAt).fetch().rowsUpdated();
+    }
+
+    private Mono<Long> upsertUnnest(ProductStatements statements, List<Product> products, OffsetDateTime ingestedAt) {
+        int size = products.size();
+        String[] uuids = new String[size];
+        String[] names = new String[size];
+        String[] descriptions = new String[size];
+        Double[] prices = new Double[size];
+        for (int i = 0; i < size; i++) {
+            Product product = products.get(i);
+            uuids[i] = product.getUuid();
+            names[i] = product.getName();
+            descriptions[i] = product.getDescription();
+            prices[i] = product.getPrice();
+        }
+        return upsertUnnest(statements, uuids, names, descriptions, prices, ingestedAt);
+    }
+
+    private Mono<Long> upsertUnnest(ProductStatements statements, String[] uuids, String[] names, String[] descriptions,
+                                    Double[] prices, OffsetDateTime ingestedAt) {
+        return databaseClient.sql(statements.unnestUpsert)
+                .bind(0, uuids)
+                .bind(1, names)
+                .bind(2, descriptions)
+                .bind(3, prices)
+                .bind(4, ingestedAt)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * COPY can not resolve conflicts, so rows are copied into a staging table dropped on commit and merged into
+     * the target table with a single upsert, all in one transaction.
+     */
+    private Mono<Long> copyIn(ProductStatements statements, Mono<ByteBuffer> payload, OffsetDateTime ingestedAt) {
+        return Mono.usingWhen(connectionFactory.create(),
+                connection -> Mono.from(connection.beginTransaction())
+                        .then(execute(connection, CREATE_COPY_STAGE))
+                        .then(unwrap(connection).copyIn(COPY_IN, payload))
+                        .then(execute(connection.createStatement(statements.mergeCopyStage).bind(0, ingestedAt)))
+                        .flatMap(rows -> Mono.from(connection.commitTransaction()).thenReturn(rows))
+                        .onErrorResume(error -> Mono.from(connection.rollbackTransaction()).then(Mono.error(error))),
+                Connection::close);
+    }
+
+    private static Mono<Long> execute(Connection connection, String sql) {
+        return execute(connection.createStatement(sql));
+    }
+
+    private static Mono<Long> execute(Statement statement) {
+        return Flux.from(statement.execute())
+                .flatMap(Result::getRowsUpdated)
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Renders the products in the COPY text format: tab separated columns, one row per line.
+     */
+    static String copyPayload(List<Product> products) {
+        StringBuilder payload = new StringBuilder(products.size() * 128);
+        for (Product product : products) {
+            appendCopyValue(payload, product.getUuid()).append('\t');
+            appendCopyValue(payload, product.getName()).append('\t');
+            appendCopyValue(payload, product.getDescription()).append('\t');
+            payload.append(product.getPrice() == null ? "\\N" : product.getPrice().toString()).append('\n');
+        }
+        return payload.toString();
+    }
+
+    private static StringBuilder appendCopyValue(StringBuilder payload, String value) {
+        if (value == null) {
+            return payload.append("\\N");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> payload.append("\\\\");
+                case '\t' -> payload.append("\\t");
+                case '\n' -> payload.append("\\n");
+                case '\r' -> payload.append("\\r");
+                default -> payload.append(c);
+            }
+        }
+        return payload;
+    }
+
+    private static PostgresqlConnection unwrap(Connection connection) {
+        Object current = connection;
+        while (!(current instanceof PostgresqlConnection) && current instanceof Wrapped<?> wrapped) {
+            current = wrapped.unwrap(); // pooled connections wrap the driver connection
+        }
+        if (current instanceof PostgresqlConnection postgresqlConnection) {
+            return postgresqlConnection;
+        }
+        throw new IllegalStateException("COPY requires a r2dbc-postgresql connection, got " + connection.getClass());
+    }
+}
@@ -0,0 +1,27 @@
+package com.nordcloud.kafkaservice.repository;
+
+/**
+ * Layout of the product table, chosen when the table is created by its schema script.
+ */
+public enum ProductPartitioning {
+
+    /** one flat table, the uuid unique across it */
+    NONE("schema.sql"),
+    /** LIST partitions of a bucket computed from the uuid by the application, a uuid lives in one partition */
+    HASH("schema-hash.sql"),
+    /** RANGE partitions of one day of ingest time, a uuid is unique per day and expired days are dropped */
+    TIME("schema-time.sql");
+
+    private final String schema;
+
+    ProductPartitioning(String schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * @return classpath location of the script creating the product table
+     */
+    public String getSchema() {
+        return schema;
+    }
+}
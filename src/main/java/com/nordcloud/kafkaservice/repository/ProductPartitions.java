@@ -0,0 +1,242 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.entity.Product;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.R2dbcException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes product batches to the partitions of the {@code persistence.partitioning} layout, so every write
+ * statement targets one partition table directly and Postgres does no tuple routing. Partitions are created on
+ * first use, once per table and process.
+ */
+@Component
+@Slf4j
+public class ProductPartitions {
+
+    public static final String TABLE = "product";
+
+    private static final DateTimeFormatter DAY_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE; // product_20240131
+    private static final String LIST_DAY_PARTITIONS = "SELECT child.relname FROM pg_inherits "
+            + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+            + "JOIN pg_class parent ON parent.oid = pg_inherits.inhparent WHERE parent.relname = '" + TABLE + "'";
+
+    private final DatabaseClient databaseClient;
+    private final ProductPartitioning partitioning;
+    private final int buckets;
+    private final Clock clock;
+    private final Map<String, Mono<Void>> created = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProductPartitions(ConnectionFactory connectionFactory,
+                             @Value("${persistence.partitioning:NONE}") ProductPartitioning partitioning,
+                             @Value("${persistence.partitions:16}") int buckets) {
+        this(connectionFactory, partitioning, buckets, Clock.systemUTC());
+    }
+
+    ProductPartitions(ConnectionFactory connectionFactory, ProductPartitioning partitioning, int buckets, Clock clock) {
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        this.partitioning = partitioning;
+        this.buckets = Math.max(1, buckets);
+        this.clock = clock;
+    }
+
+    public ProductPartitioning getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * @return ingest time of a batch written now
+     */
+    public Instant now() {
+        return clock.instant();
+    }
+
+    /**
+     * Whether the rows of one batch can belong to different partitions, which then have to be split by uuid.
+     */
+    public boolean routesByUuid() {
+        return partitioning == ProductPartitioning.HASH;
+    }
+
+    /**
+     * Whether a write has to delete the versions of its uuids left in the partitions of earlier days. The unique
+     * index of a day partition only covers that day, TIME partitioning keeps a single row per uuid this way, in the
+     * partition of the day it was last written.
+     */
+    public boolean supersedesEarlierDays() {
+        return partitioning == ProductPartitioning.TIME;
+    }
+
+    /**
+     * @return start of the UTC day of the ingest time, rows ingested before it belong to earlier partitions
+     */
+    public Instant dayStart(Instant ingestedAt) {
+        return day(ingestedAt).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    /**
+     * Splits the batch per target table, in encounter order. A single entry for every layout but HASH.
+     */
+    public Map<String, List<Product>> route(List<Product> products, Instant ingestedAt) {
+        if (!routesByUuid()) {
+            return Map.of(table(ingestedAt), products);
+        }
+        Map<String, List<Product>> routed = new LinkedHashMap<>();
+        for (Product product : products) {
+            routed.computeIfAbsent(bucketTable(bucket(product.getUuid())), table -> new ArrayList<>())
+                    .add(product);
+        }
+        return routed;
+    }
+
+    /**
+     * Table of a whole batch ingested at the given time, for the layouts that do not route by uuid.
+     */
+    public String table(Instant ingestedAt) {
+        return switch (partitioning) {
+            case NONE -> TABLE;
+            case TIME -> dayTable(day(ingestedAt));
+            case HASH -> throw new IllegalStateException("HASH partitioning routes every product by its uuid");
+        };
+    }
+
+    /**
+     * Creates the partition behind the table unless this process did already, a no-op for the flat table.
+     * Failed creations are attempted again by the next write.
+     */
+    public Mono<Void> ensure(String table) {
+        if (TABLE.equals(table)) {
+            return Mono.empty();
+        }
+        return created.computeIfAbsent(table, key -> createPartition(key)
+                .cache(value -> Duration.ZERO, error -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Creates the partition of the next day, so the first writes after midnight do not wait for DDL.
+     */
+    public Mono<Void> createAhead() {
+        return partitioning == ProductPartitioning.TIME
+                ? ensure(dayTable(day(now()).plusDays(1)))
+                : Mono.empty();
+    }
+
+    /**
+     * Detaches and drops every day partition entirely older than the retention. Dropping a table frees its rows
+     * at once, with no dead tuples left to vacuum as DELETE would.
+     *
+     * @return the dropped partitions
+     */
+    public Flux<String> dropExpired(Duration retention) {
+        if (partitioning != ProductPartitioning.TIME) {
+            return Flux.empty();
+        }
+        LocalDate oldestKept = day(now().minus(retention));
+        return databaseClient.sql(LIST_DAY_PARTITIONS)
+                .map(row -> row.get(0, String.class))
+                .all()
+                .filter(table -> {
+                    LocalDate day = parseDay(table);
+                    return day != null && day.isBefore(oldestKept);
+                })
+                .sort()
+                .concatMap(table -> databaseClient.sql("ALTER TABLE " + TABLE + " DETACH PARTITION " + table + " CONCURRENTLY")
+                        .then()
+                        .then(databaseClient.sql("DROP TABLE " + table).then())
+                        .doOnSuccess(dropped -> {
+                            created.remove(table);
+                            log.info("Dropped product partition {}, older than {}", table, retention);
+                        })
+                        .thenReturn(table));
+    }
+
+    int bucket(String uuid) {
+        return bucket(uuid, buckets);
+    }
+
+    /**
+     * Bucket of a uuid among the given number, shared with the {@code ProductBucketPartitioner} of the producer.
+     */
+    public static int bucket(String uuid, int buckets) {
+        return Math.floorMod(uuid.hashCode(), buckets); // String.hashCode is specified, stable across processes
+    }
+
+    static String bucketTable(int bucket) {
+        return TABLE + "_b" + bucket;
+    }
+
+    static String dayTable(LocalDate day) {
+        return TABLE + "_" + DAY_SUFFIX.format(day);
+    }
+
+    private static LocalDate day(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private static LocalDate parseDay(String table) {
+        if (!table.startsWith(TABLE + "_") || table.length() != TABLE.length() + 9) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(table.substring(TABLE.length() + 1), DAY_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private Mono<Void> createPartition(String table) {
+        String definition = switch (partitioning) {
+            case HASH -> {
+                int bucket = Integer.parseInt(table.substring(TABLE.length() + 2));
+                // rows written straight into the partition take its bucket as default
+                yield "CREATE TABLE IF NOT EXISTS " + table + " PARTITION OF " + TABLE + " (bucket DEFAULT " + bucket
+                        + ") FOR VALUES IN (" + bucket + ")";
+            }
+            case TIME -> {
+                LocalDate day = parseDay(table);
+                yield "CREATE TABLE IF NOT EXISTS " + table + " PARTITION OF " + TABLE + " FOR VALUES FROM ('"
+                        + day.atStartOfDay(ZoneOffset.UTC).toInstant() + "') TO ('"
+                        + day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant() + "')";
+            }
+            case NONE -> throw new IllegalStateException("The flat product table has no partitions");
+        };
+        return databaseClient.sql(definition).then()
+                // the conflict target of the upserts, the parent can not have a unique index without the partition key
+                .then(databaseClient.sql("CREATE UNIQUE INDEX IF NOT EXISTS " + table + "_uuid_uidx ON " + table + " (uuid)")
+                        .then())
+                .onErrorResume(ProductPartitions::isCreatedConcurrently, error -> Mono.empty())
+                .doOnSuccess(done -> log.info("Created product partition {}", table));
+    }
+
+    /**
+     * Another instance created the same partition in between: duplicate_table or a unique violation in the catalog.
+     */
+    private static boolean isCreatedConcurrently(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException r2dbcException) {
+                return "42P07".equals(r2dbcException.getSqlState()) || "23505".equals(r2dbcException.getSqlState());
+            }
+        }
+        return false;
+    }
+}
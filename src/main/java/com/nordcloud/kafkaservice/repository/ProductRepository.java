@@ -1,10 +1,28 @@
 package com.nordcloud.kafkaservice.repository;
 
 import com.nordcloud.kafkaservice.model.entity.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Repository
-public interface ProductRepository extends R2dbcRepository<Product, Integer> {
+public interface ProductRepository extends R2dbcRepository<Product, Integer>, ProductBulkRepository {
 
+    /**
+     * Latest version of the product. TIME partitioning deletes the rows of earlier days after writing a new one,
+     * a failed write can leave both until the product is written again.
+     */
+    @Query("SELECT * FROM product WHERE uuid = :uuid ORDER BY ingested_at DESC LIMIT 1")
+    Mono<Product> findByUuid(String uuid);
+
+    @Query("SELECT EXISTS (SELECT 1 FROM product)")
+    Mono<Boolean> hasProducts();
+
+    /**
+     * Inclusive price range, served by the (price, id) index when sorted on price and id.
+     */
+    Flux<Product> findByPriceBetween(double minPrice, double maxPrice, Pageable pageable);
 }
@@ -0,0 +1,67 @@
+package com.nordcloud.kafkaservice.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Upsert statements of one product table, the flat table or one of its partitions. Every statement writes the
+ * ingest time of the batch as its last parameter and updates it on conflict, which stays inside the partition as
+ * a batch never spans two days. Versions written on earlier days are deleted after the upsert with TIME
+ * partitioning.
+ */
+final class ProductStatements {
+
+    /** versions of the uuids in the partitions of earlier days, pruned to those partitions by the ingest time */
+    static final String DELETE_EARLIER_VERSIONS = "DELETE FROM " + ProductPartitions.TABLE
+            + " WHERE uuid = ANY($1::varchar[]) AND ingested_at < $2";
+    static final String JDBC_DELETE_EARLIER_VERSIONS = "DELETE FROM " + ProductPartitions.TABLE
+            + " WHERE uuid = ANY(?) AND ingested_at < ?";
+
+    private static final Map<String, ProductStatements> STATEMENTS = new ConcurrentHashMap<>();
+
+    final String table;
+    final String insertPrefix;
+    final String onConflictUpdate;
+    final String singleUpsert;
+    final String jdbcSingleUpsert;
+    final String unnestUpsert;
+    final String mergeCopyStage;
+
+    private ProductStatements(String table) {
+        this.table = table;
+        this.insertPrefix = "INSERT INTO " + table + " (uuid, p_name, description, price, ingested_at) ";
+        this.onConflictUpdate = " ON CONFLICT (uuid) DO UPDATE SET p_name = EXCLUDED.p_name, "
+                + "description = EXCLUDED.description, price = EXCLUDED.price, ingested_at = EXCLUDED.ingested_at";
+        this.singleUpsert = insertPrefix + "VALUES ($1, $2, $3, $4, $5)" + onConflictUpdate;
+        this.jdbcSingleUpsert = insertPrefix + "VALUES (?, ?, ?, ?, ?)" + onConflictUpdate;
+        this.unnestUpsert = insertPrefix + "SELECT *, $5::timestamptz "
+                + "FROM unnest($1::varchar[], $2::varchar[], $3::varchar[], $4::float8[])" + onConflictUpdate;
+        this.mergeCopyStage = insertPrefix + "SELECT uuid, p_name, description, price, $1::timestamptz "
+                + "FROM product_stage" + onConflictUpdate;
+    }
+
+    static ProductStatements of(String table) {
+        return STATEMENTS.computeIfAbsent(table, ProductStatements::new);
+    }
+
+    /**
+     * One row of placeholders per product, the ingest time bound once as the last parameter.
+     */
+    String multiRowUpsert(int rows) {
+        StringBuilder sql = new StringBuilder(insertPrefix.length() + rows * 28).append(insertPrefix).append("VALUES ");
+        int ingestedAt = rows * 4 + 1;
+        int parameter = 1;
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                sql.append(", ");
+            }
+            sql.append("($").append(parameter++)
+                    .append(", $").append(parameter++)
+                    .append(", $").append(parameter++)
+                    .append(", $").append(parameter++)
+                    .append(", $").append(ingestedAt)
+                    .append(')');
+        }
+        return sql.append(onConflictUpdate).toString();
+    }
+}
@@ -0,0 +1,110 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sizes the write batches of the consumer. Records are buffered up to {@link #getMaxBatchSize()} or for at most
+ * {@link #getMaxLinger()}, then split into write batches of the current size. Every {@value #ADJUST_INTERVAL}
+ * writes the size shrinks when the p99 write latency plus the linger exceeds the target latency, and grows when
+ * most write batches came out full, meaning records are waiting and the consumer is lagging behind.
+ */
+@Component
+@ConsumerRole
+public class AdaptiveBatchController {
+
+    static final int LATENCY_WINDOW = 128;
+    static final int ADJUST_INTERVAL = 16;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final Duration maxLinger;
+    private final long writeBudgetNanos;
+    private final boolean adaptive;
+
+    private final long[] writeLatencies = new long[LATENCY_WINDOW];
+    private int samples;
+    private int nextSample;
+    private int writesSinceAdjust;
+    private int fullBatchesSinceAdjust;
+    private volatile int batchSize;
+
+    public AdaptiveBatchController(@Value("${bufferSize}") int minBatchSize,
+                                   @Value("${batch.maxSize:500}") int maxBatchSize,
+                                   @Value("${batch.maxLinger:PT0.1S}") Duration maxLinger,
+                                   @Value("${batch.targetLatency:PT1S}") Duration targetLatency,
+                                   @Value("${batch.adaptive:true}") boolean adaptive) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = Math.max(minBatchSize, maxBatchSize);
+        this.maxLinger = maxLinger;
+        this.writeBudgetNanos = targetLatency.minus(maxLinger).toNanos();
+        this.adaptive = adaptive;
+        this.batchSize = adaptive ? minBatchSize : this.maxBatchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public Duration getMaxLinger() {
+        return maxLinger;
+    }
+
+    /**
+     * Splits a buffer into write batches of the current size.
+     */
+    public <T> List<List<T>> split(List<T> buffer) {
+        int size = batchSize;
+        synchronized (this) {
+            fullBatchesSinceAdjust += buffer.size() / size;
+        }
+        if (buffer.size() <= size) {
+            return List.of(buffer);
+        }
+        List<List<T>> batches = new ArrayList<>(buffer.size() / size + 1);
+        for (int from = 0; from < buffer.size(); from += size) {
+            batches.add(buffer.subList(from, Math.min(buffer.size(), from + size)));
+        }
+        return batches;
+    }
+
+    public synchronized void onWrite(long writeNanos) {
+        writeLatencies[nextSample] = writeNanos;
+        nextSample = (nextSample + 1) % LATENCY_WINDOW;
+        samples = Math.min(samples + 1, LATENCY_WINDOW);
+        if (!adaptive || ++writesSinceAdjust < ADJUST_INTERVAL) {
+            return;
+        }
+        int current = batchSize;
+        if (p99() > writeBudgetNanos) {
+            batchSize = Math.max(minBatchSize, current - current / 4 - 1); // writes too slow for the target
+        } else if (fullBatchesSinceAdjust * 2 > writesSinceAdjust) {
+            batchSize = Math.min(maxBatchSize, current + current / 4 + 1); // lagging, amortise more per write
+        }
+        writesSinceAdjust = 0;
+        fullBatchesSinceAdjust = 0;
+    }
+
+    /**
+     * p99 of the last {@value #LATENCY_WINDOW} write latencies, 0 before the first write.
+     */
+    public synchronized long getP99WriteNanos() {
+        return samples == 0 ? 0 : p99();
+    }
+
+    long p99() {
+        long[] sorted = Arrays.copyOf(writeLatencies, samples);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(samples * 0.99) - 1];
+    }
+}
@@ -0,0 +1,14 @@
+package com.nordcloud.kafkaservice.service;
+
+/**
+ * When the {@link ProductBootstrap} rebuilds the product table from the topic before streaming starts.
+ */
+public enum BootstrapMode {
+
+    /** never, streaming resumes from the committed offsets */
+    NONE,
+    /** when the product table has no rows, after a cold start or once Postgres was lost */
+    EMPTY,
+    /** on every start */
+    ALWAYS
+}
@@ -0,0 +1,260 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flow control between Kafka and Postgres. Two loops keep memory bounded when the database stalls and let the
+ * consumer catch up at full speed once it recovers:
+ * <ul>
+ *     <li>records received but not yet committed are counted; above {@code consumer.flow.maxBufferedRecords} every
+ *     assigned partition is paused through {@code doOnConsumer}, and resumed once half of them are committed</li>
+ *     <li>every {@code consumer.flow.interval} the number of concurrent batch writes is halved when the p99 write
+ *     latency exceeds the target or no write completed, and grows by one while the consumer lags</li>
+ * </ul>
+ * Only partitions paused here are resumed, the ones reactor-kafka pauses for backpressure are left alone.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class ConsumerFlowController {
+
+    private final ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final AdaptiveBatchController batchController;
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final long maxBufferedRecords;
+    private final long targetLatencyNanos;
+    private final Duration interval;
+
+    private final AtomicLong bufferedRecords = new AtomicLong();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final Set<TopicPartition> pausedPartitions = ConcurrentHashMap.newKeySet();
+    private final Deque<Waiter> waiters = new ArrayDeque<>(); // guarded by this
+    private int concurrency; // guarded by this
+    private int inFlight; // guarded by this
+    private long completedSinceAdjust; // guarded by this
+
+    public ConsumerFlowController(ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate,
+                                  ConsumerLagMonitor consumerLagMonitor,
+                                  AdaptiveBatchController batchController,
+                                  ConsumerMetrics consumerMetrics,
+                                  @Value("${consumer.flow.enabled:true}") boolean enabled,
+                                  @Value("${consumer.maxInFlightBatches:4}") int maxConcurrency,
+                                  @Value("${consumer.flow.maxBufferedRecords:20000}") long maxBufferedRecords,
+                                  @Value("${batch.targetLatency:PT1S}") Duration targetLatency,
+                                  @Value("${consumer.flow.interval:PT1S}") Duration interval) {
+        this.reactiveKafkaConsumerTemplate = reactiveKafkaConsumerTemplate;
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.batchController = batchController;
+        this.enabled = enabled;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxBufferedRecords = maxBufferedRecords;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.interval = interval;
+        this.concurrency = this.maxConcurrency;
+        consumerMetrics.gauge("flow.buffered", "Records received and not committed yet", bufferedRecords::get);
+        consumerMetrics.gauge("flow.concurrency", "Batch writes allowed at the same time", this::getConcurrency);
+        consumerMetrics.gauge("flow.paused", "Partitions paused by the flow controller", pausedPartitions::size);
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public Disposable control() {
+        if (!enabled) {
+            return Flux.never().subscribe();
+        }
+        return Flux.interval(interval).subscribe(tick -> adjust());
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getBufferedRecords() {
+        return bufferedRecords.get();
+    }
+
+    public boolean isPaused() {
+        return paused.get();
+    }
+
+    /**
+     * Runs the write once one of the current concurrency permits is free.
+     */
+    public <T> Mono<T> withPermit(Mono<T> write) {
+        if (!enabled) {
+            return write;
+        }
+        return Mono.usingWhen(acquire(), permit -> write,
+                permit -> Mono.fromRunnable(this::release),
+                (permit, error) -> Mono.fromRunnable(this::release),
+                permit -> Mono.fromRunnable(this::release));
+    }
+
+    public void onReceived() {
+        if (enabled && bufferedRecords.incrementAndGet() >= maxBufferedRecords && paused.compareAndSet(false, true)) {
+            pause();
+        }
+    }
+
+    public void onCommitted(int records) {
+        if (enabled && bufferedRecords.addAndGet(-records) <= maxBufferedRecords / 2 && paused.compareAndSet(true, false)) {
+            resume();
+        }
+    }
+
+    /**
+     * To be called when the pipeline is subscribed again: the new consumer starts unpaused and redelivers
+     * everything that was not committed.
+     */
+    public void reset() {
+        bufferedRecords.set(0);
+        paused.set(false);
+        pausedPartitions.clear();
+    }
+
+    void adjust() {
+        long p99 = batchController.getP99WriteNanos();
+        long lag = consumerLagMonitor.getTotalLag();
+        List<Waiter> granted;
+        synchronized (this) {
+            boolean stalled = inFlight > 0 && completedSinceAdjust == 0;
+            if (stalled || p99 > targetLatencyNanos) {
+                concurrency = Math.max(1, concurrency / 2); // back off while the database is slow
+            } else if ((lag > 0 || !waiters.isEmpty()) && concurrency < maxConcurrency) {
+                concurrency++; // catch up
+            }
+            completedSinceAdjust = 0;
+            granted = grantWaiters();
+        }
+        granted.forEach(Waiter::grant);
+        if (paused.get()) {
+            pause(); // partitions assigned since the pause are paused too
+        }
+    }
+
+    private Mono<Boolean> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> cancel(waiter)); // before it can be granted, a cancel never goes unnoticed
+            boolean granted;
+            synchronized (this) {
+                granted = !waiter.cancelled && inFlight < concurrency;
+                if (granted) {
+                    inFlight++;
+                    waiter.granted = true;
+                } else if (!waiter.cancelled) {
+                    waiters.add(waiter);
+                }
+            }
+            if (granted) {
+                waiter.grant();
+            }
+        });
+    }
+
+    /**
+     * A waiter cancelled once granted, before its permit reached the write, drops the permit: it is released here
+     * as {@code usingWhen} never got it.
+     */
+    private void cancel(Waiter waiter) {
+        boolean granted;
+        synchronized (this) {
+            waiter.cancelled = true;
+            granted = !waiters.remove(waiter) && waiter.granted;
+        }
+        if (granted) {
+            release();
+        }
+    }
+
+    private void release() {
+        List<Waiter> granted;
+        synchronized (this) {
+            inFlight--;
+            completedSinceAdjust++;
+            granted = grantWaiters();
+        }
+        granted.forEach(Waiter::grant);
+    }
+
+    private List<Waiter> grantWaiters() {
+        List<Waiter> granted = new ArrayList<>(0);
+        while (inFlight < concurrency && !waiters.isEmpty()) {
+            inFlight++;
+            Waiter waiter = waiters.poll();
+            waiter.granted = true;
+            granted.add(waiter);
+        }
+        return granted;
+    }
+
+    private void pause() {
+        reactiveKafkaConsumerTemplate.doOnConsumer(consumer -> {
+                    Set<TopicPartition> toPause = new HashSet<>(consumer.assignment());
+                    toPause.removeAll(pausedPartitions);
+                    consumer.pause(toPause);
+                    pausedPartitions.addAll(toPause);
+                    return toPause.size();
+                })
+                .subscribe(count -> {
+                    if (count > 0) {
+                        log.warn("Paused {} partitions, {} records are waiting to be written", count, bufferedRecords.get());
+                    }
+                }, error -> log.warn("Could not pause partitions: {}", error.getMessage()));
+    }
+
+    private void resume() {
+        reactiveKafkaConsumerTemplate.doOnConsumer(consumer -> {
+                    Set<TopicPartition> toResume = new HashSet<>(pausedPartitions);
+                    toResume.retainAll(consumer.assignment()); // revoked partitions can not be resumed
+                    consumer.resume(toResume);
+                    pausedPartitions.clear();
+                    return toResume.size();
+                })
+                .subscribe(count -> log.info("Resumed {} partitions, {} records are waiting to be written", count,
+                        bufferedRecords.get()), error -> log.warn("Could not resume partitions: {}", error.getMessage()));
+    }
+
+    /**
+     * A write waiting for a permit. Its flags are guarded by the controller, the permit is signalled outside of it.
+     */
+    private static final class Waiter {
+
+        private final MonoSink<Boolean> sink;
+        private boolean granted;
+        private boolean cancelled;
+
+        private Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+
+        private void grant() {
+            sink.success(Boolean.TRUE); // dropped when cancelled meanwhile, the cancel then releases the permit
+        }
+    }
+}
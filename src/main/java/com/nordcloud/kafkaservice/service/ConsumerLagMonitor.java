@@ -0,0 +1,81 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Periodically reads the lag of every assigned partition on the consumer thread. {@link Consumer#currentLag}
+ * answers from the last fetch response, so polling it costs no broker round trip.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class ConsumerLagMonitor {
+
+    private final ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
+    private final ConsumerMetrics consumerMetrics;
+    private final Duration interval;
+
+    private volatile Map<TopicPartition, Long> lags = Collections.emptyMap();
+
+    public ConsumerLagMonitor(ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate,
+                              ConsumerMetrics consumerMetrics,
+                              @Value("${consumer.lagPollInterval:PT5S}") Duration interval) {
+        this.reactiveKafkaConsumerTemplate = reactiveKafkaConsumerTemplate;
+        this.consumerMetrics = consumerMetrics;
+        this.interval = interval;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public Disposable monitor() {
+        return Flux.interval(interval)
+                .concatMap(tick -> reactiveKafkaConsumerTemplate.doOnConsumer(ConsumerLagMonitor::currentLag)
+                        .onErrorResume(error -> {
+                            log.debug("Consumer lag not available yet: {}", error.getMessage()); // receive() not subscribed yet
+                            return Mono.empty();
+                        }))
+                .subscribe(this::update);
+    }
+
+    public Map<TopicPartition, Long> getLags() {
+        return lags;
+    }
+
+    public long getTotalLag() {
+        long total = 0;
+        for (long lag : lags.values()) {
+            total += lag;
+        }
+        return total;
+    }
+
+    void update(Map<TopicPartition, Long> currentLags) {
+        lags = currentLags;
+        currentLags.forEach(consumerMetrics::lag);
+    }
+
+    private static Map<TopicPartition, Long> currentLag(Consumer<String, ProductDto> consumer) {
+        Map<TopicPartition, Long> currentLags = new HashMap<>();
+        for (TopicPartition topicPartition : consumer.assignment()) {
+            consumer.currentLag(topicPartition).ifPresent(lag -> currentLags.put(topicPartition, lag));
+        }
+        return currentLags;
+    }
+}
@@ -0,0 +1,49 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.kafka.receiver.ReceiverRecord;
+
+/**
+ * Logging of the consumer hot path, under the {@link KafkaConsumerService} category. Records are logged at DEBUG,
+ * or at INFO for one offset in every {@code consumer.logging.recordSampleRate} of each partition, and batches as
+ * a summary. Every call is guarded, so nothing is formatted or allocated for records that are not logged.
+ */
+@Component
+@ConsumerRole
+public class ConsumerLogging {
+
+    private static final Logger log = LoggerFactory.getLogger(KafkaConsumerService.class);
+
+    private final int recordSampleRate;
+    private final boolean batchSummary;
+
+    public ConsumerLogging(@Value("${consumer.logging.recordSampleRate:0}") int recordSampleRate,
+                           @Value("${consumer.logging.batchSummary:true}") boolean batchSummary) {
+        this.recordSampleRate = recordSampleRate;
+        this.batchSummary = batchSummary;
+    }
+
+    public void record(ReceiverRecord<String, ProductDto> receiverRecord) {
+        if (recordSampleRate > 0 && receiverRecord.offset() % recordSampleRate == 0 && log.isInfoEnabled()) {
+            log.info("Processing sampled record with key={}, value={} from topic={}, partition={}, offset={}.",
+                    receiverRecord.key(), receiverRecord.value(), receiverRecord.topic(),
+                    receiverRecord.partition(), receiverRecord.offset());
+        } else if (log.isDebugEnabled()) {
+            log.debug("Processing record with key={}, value={} from topic={}, partition={}, offset={}.",
+                    receiverRecord.key(), receiverRecord.value(), receiverRecord.topic(),
+                    receiverRecord.partition(), receiverRecord.offset());
+        }
+    }
+
+    public void batch(ProductBatch batch) {
+        if (batchSummary && log.isInfoEnabled()) {
+            log.info("Successfully processed events: records={}, products={}, bytes={}, offsets={}",
+                    batch.getRecordCount(), batch.getProductCount(), batch.getBytes(), batch.describeOffsets());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.codec.ProductCodec;
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverRecord;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Routes records that can not be processed to the dead-letter topic, with the failure and the original position
+ * in headers. The returned mono fails when the broker rejects the record, so its offset is not committed.
+ * Records whose value could not be decoded are sent without value, the raw payload and its codec in headers.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class DeadLetterPublisher {
+
+    public static final String ERROR_CLASS_HEADER = "dlt-error-class";
+    public static final String ERROR_MESSAGE_HEADER = "dlt-error-message";
+    public static final String ORIGINAL_TOPIC_HEADER = "dlt-original-topic";
+    public static final String ORIGINAL_PARTITION_HEADER = "dlt-original-partition";
+    public static final String ORIGINAL_OFFSET_HEADER = "dlt-original-offset";
+    public static final String ORIGINAL_VALUE_HEADER = "dlt-original-value";
+
+    private final ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate;
+    private final String deadLetterTopic;
+
+    public DeadLetterPublisher(ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate,
+                               @Value("${product.deadLetterTopic}") String deadLetterTopic) {
+        this.reactiveKafkaProducerTemplate = reactiveKafkaProducerTemplate;
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    /**
+     * Same publisher sending through the given producer, the transactional one of the exactly-once relay to send
+     * the records in its open transaction.
+     */
+    public DeadLetterPublisher through(ReactiveKafkaProducerTemplate<String, ProductDto> producerTemplate) {
+        return new DeadLetterPublisher(producerTemplate, deadLetterTopic);
+    }
+
+    public Mono<Void> publish(ReceiverRecord<String, ProductDto> receiverRecord, Throwable error) {
+        RecordHeaders headers = new RecordHeaders();
+        header(headers, ERROR_CLASS_HEADER, error.getClass().getName());
+        header(headers, ERROR_MESSAGE_HEADER, String.valueOf(error.getMessage()));
+        header(headers, ORIGINAL_TOPIC_HEADER, receiverRecord.topic());
+        header(headers, ORIGINAL_PARTITION_HEADER, String.valueOf(receiverRecord.partition()));
+        header(headers, ORIGINAL_OFFSET_HEADER, String.valueOf(receiverRecord.offset()));
+        Header undecodable = receiverRecord.headers().lastHeader(ProductDtoDeserializer.VALUE_HEADER);
+        if (undecodable != null) {
+            headers.add(ORIGINAL_VALUE_HEADER, undecodable.value());
+            Header codec = receiverRecord.headers().lastHeader(ProductCodec.HEADER);
+            if (codec != null) {
+                headers.add(codec);
+            }
+        }
+        ProducerRecord<String, ProductDto> producerRecord =
+                new ProducerRecord<>(deadLetterTopic, null, receiverRecord.key(), receiverRecord.value(), headers);
+        return reactiveKafkaProducerTemplate.send(producerRecord)
+                .flatMap(senderResult -> senderResult.exception() != null
+                        ? Mono.<Void>error(senderResult.exception())
+                        : Mono.<Void>empty())
+                .doOnSuccess(ignored -> log.warn("Sent record from topic={}, partition={}, offset={} to {}: {}",
+                        receiverRecord.topic(), receiverRecord.partition(), receiverRecord.offset(), deadLetterTopic,
+                        error.getMessage()));
+    }
+
+    private static void header(RecordHeaders headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,188 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.kafka.sender.SenderRecord;
+import reactor.kafka.sender.TransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exactly-once consume-transform-produce, replacing {@link KafkaConsumerService} with
+ * {@code consumer.exactlyOnce.enabled=true}. Every batch polled from {@code product.topic} is written to Postgres
+ * (unless {@code consumer.exactlyOnce.persist=false}) and the written products are produced to
+ * {@code product.outputTopic}, keyed by uuid, in one Kafka transaction together with the consumer offsets.
+ * <p>
+ * A failed transaction is aborted and the pipeline resubscribed, so the batch is redelivered: downstream
+ * {@code read_committed} consumers see every product once, while Postgres, outside the transaction, absorbs the
+ * replay through the idempotent upsert. Replays are therefore not dropped by the {@link RecentProductCache}, they
+ * must be produced again. Records that can not be written are dead-lettered in the same transaction, so an aborted
+ * batch does not leave them on the dead-letter topic.
+ * <p>
+ * The {@link ProductBootstrap}, if any, runs before the relay subscribes. It only loads Postgres: the products it
+ * loaded are not produced to the output topic, which the relay joins at the committed end offsets.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "consumer.exactlyOnce.enabled", havingValue = "true")
+@ConsumerRole
+public class ExactlyOnceProductRelay {
+
+    private final ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
+    private final ReactiveKafkaProducerTemplate<String, ProductDto> transactionalProducerTemplate;
+    private final ProductMapper productMapper;
+    private final ProductBatchWriter productBatchWriter;
+    private final DeadLetterPublisher deadLetterPublisher; // sends in the transaction of the batch
+    private final ProductBootstrap productBootstrap;
+    private final ConsumerMetrics consumerMetrics;
+    private final String outputTopic;
+    private final boolean persist;
+    private final Duration restartDelay;
+
+    public ExactlyOnceProductRelay(ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate,
+                                   @Qualifier("transactionalKafkaProducerTemplate")
+                                   ReactiveKafkaProducerTemplate<String, ProductDto> transactionalProducerTemplate,
+                                   ProductMapper productMapper,
+                                   ProductBatchWriter productBatchWriter,
+                                   DeadLetterPublisher deadLetterPublisher,
+                                   ProductBootstrap productBootstrap,
+                                   ConsumerMetrics consumerMetrics,
+                                   @Value("${product.outputTopic}") String outputTopic,
+                                   @Value("${consumer.exactlyOnce.persist:true}") boolean persist,
+                                   @Value("${consumer.restartDelay:PT5S}") Duration restartDelay) {
+        this.reactiveKafkaConsumerTemplate = reactiveKafkaConsumerTemplate;
+        this.transactionalProducerTemplate = transactionalProducerTemplate;
+        this.productMapper = productMapper;
+        this.productBatchWriter = productBatchWriter;
+        this.deadLetterPublisher = deadLetterPublisher.through(transactionalProducerTemplate);
+        this.productBootstrap = productBootstrap;
+        this.consumerMetrics = consumerMetrics;
+        this.outputTopic = outputTopic;
+        this.persist = persist;
+        this.restartDelay = restartDelay;
+    }
+
+    /**
+     * Relays until the application stops, once the bootstrap, if any, loaded the topic, resubscribing after the
+     * restart delay once a transaction is aborted.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public Disposable consume() {
+        return productBootstrap.bootstrap()
+                .thenMany(Flux.defer(this::relay)
+                        .repeatWhen(completions -> completions.delayElements(restartDelay)))
+                .subscribe();
+    }
+
+    /**
+     * @return the number of products produced by every committed transaction, completes once one is aborted
+     */
+    public Flux<Integer> relay() {
+        TransactionManager transactionManager = transactionalProducerTemplate.transactionManager();
+        return reactiveKafkaConsumerTemplate
+                .receiveExactlyOnce(transactionManager) // one transaction per polled batch, offsets included
+                .concatMap(records -> records.collectList().flatMap(batch -> relay(batch, transactionManager)))
+                .onErrorResume(error -> {
+                    consumerMetrics.error("transaction");
+                    log.error("Error during product relay, aborting the transaction. Details : {}", error.getMessage());
+                    return transactionManager.abort()
+                            .doOnError(abortError -> log.error("Could not abort the transaction", abortError))
+                            .onErrorResume(abortError -> Mono.empty())
+                            .then(Mono.<Integer>empty());
+                });
+    }
+
+    private Mono<Integer> relay(List<ConsumerRecord<String, ProductDto>> records, TransactionManager transactionManager) {
+        long start = System.nanoTime();
+        ProductBatch batch = toBatch(records);
+        Mono<List<Product>> products = persist
+                ? productBatchWriter.write(batch, deadLetterPublisher) // dead-letters what can not be written
+                        .map(ProductBatch::getProducts)
+                : Flux.fromIterable(batch.getRejected())
+                        .concatMap(rejected -> deadLetterPublisher.publish(rejected.receiverRecord(), rejected.error()))
+                        .then(Mono.just(batch.getProducts()));
+        return products
+                .flatMap(written -> transactionalProducerTemplate
+                        .send(Flux.fromIterable(written).map(this::toSenderRecord))
+                        .then(transactionManager.commit())
+                        .thenReturn(written.size()))
+                .doOnSuccess(produced -> {
+                    consumerMetrics.transactionCommitted(produced, System.nanoTime() - start);
+                    consumerMetrics.committed(records);
+                });
+    }
+
+    private ProductBatch toBatch(List<ConsumerRecord<String, ProductDto>> records) {
+        Map<String, Product> latestByUuid = new LinkedHashMap<>();
+        Map<String, ReceiverRecord<String, ProductDto>> latestRecordByUuid = new LinkedHashMap<>();
+        List<ProductBatch.RejectedRecord> rejected = new ArrayList<>(0);
+        long bytes = 0;
+        for (ConsumerRecord<String, ProductDto> consumerRecord : records) {
+            TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+            consumerMetrics.recordReceived(topicPartition);
+            ReceiverRecord<String, ProductDto> receiverRecord = new ReceiverRecord<>(consumerRecord,
+                    new TransactionalOffset(topicPartition, consumerRecord.offset()));
+            ProductDto productDto = consumerRecord.value();
+            IllegalArgumentException decodeError = ProductDtoDeserializer.decodeError(consumerRecord.headers());
+            if (decodeError != null) {
+                consumerMetrics.error("decoding");
+                rejected.add(new ProductBatch.RejectedRecord(receiverRecord, decodeError));
+            } else if (productDto == null || productDto.getUuid() == null) {
+                consumerMetrics.error("mapping");
+                rejected.add(new ProductBatch.RejectedRecord(receiverRecord,
+                        new IllegalArgumentException("Record has no product uuid")));
+            } else {
+                Product product = productMapper.toProduct(productDto);
+                latestByUuid.put(product.getUuid(), product); // later records of a uuid win inside the batch
+                latestRecordByUuid.put(product.getUuid(), receiverRecord);
+            }
+            bytes += Math.max(0, consumerRecord.serializedValueSize());
+        }
+        // no offsets to commit, the transaction carries them
+        return new ProductBatch(new ArrayList<>(latestByUuid.values()), null, new ArrayList<>(latestRecordByUuid.values()),
+                rejected, Map.of(), Map.of(), records.size(), bytes);
+    }
+
+    private SenderRecord<String, ProductDto, Void> toSenderRecord(Product product) {
+        return SenderRecord.create(outputTopic, null, null, product.getUuid(), productMapper.toProductDto(product), null);
+    }
+
+    /**
+     * Position of a record relayed in a transaction, committed by the transaction rather than by the receiver.
+     */
+    private record TransactionalOffset(TopicPartition topicPartition, long offset) implements ReceiverOffset {
+
+        @Override
+        public void acknowledge() {
+        }
+
+        @Override
+        public Mono<Void> commit() {
+            return Mono.empty();
+        }
+    }
+}
@@ -1,73 +1,292 @@
 package com.nordcloud.kafkaservice.service;
 
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
 import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
 import com.nordcloud.kafkaservice.model.dto.ProductDto;
 import com.nordcloud.kafkaservice.model.entity.Product;
-import com.nordcloud.kafkaservice.repository.ProductRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
 import org.springframework.stereotype.Service;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.kafka.receiver.ReceiverRecord;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @Service
 @Slf4j
+@ConditionalOnProperty(name = "consumer.exactlyOnce.enabled", havingValue = "false", matchIfMissing = true)
+@ConsumerRole
 public class KafkaConsumerService {
 
+    /**
+     * Upper bound of partition groups processed at the same time. Partition groups never complete, so the
+     * flatMap concurrency has to be at least the number of partitions assigned to this consumer.
+     */
+    static final int MAX_ASSIGNED_PARTITIONS = 1024;
+
     private final ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
-    private final ProductRepository productRepository;
     private final ProductMapper productMapper;
+    private final ProductBatchWriter productBatchWriter;
+    private final ProductColumnsPool productColumnsPool;
+    private final RecentProductCache recentProductCache;
+    private final AdaptiveBatchController batchController;
+    private final ConsumerMetrics consumerMetrics;
+    private final ConsumerLogging consumerLogging;
+    private final ConsumerFlowController flowController;
+    private final ProductBootstrap productBootstrap;
 
-    private final int bufferSize;
+    private final int partitionParallelism;
+    private final int maxInFlightBatches;
+    private final boolean columnarBatches;
+    private final boolean compacted;
+    private final Duration restartDelay;
+    private final Scheduler persistenceScheduler;
 
     public KafkaConsumerService(ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate,
-                                ProductRepository productRepository,
                                 ProductMapper productMapper,
-                                @Value("${bufferSize}") int bufferSize) {
+                                ProductBatchWriter productBatchWriter,
+                                ProductColumnsPool productColumnsPool,
+                                RecentProductCache recentProductCache,
+                                AdaptiveBatchController batchController,
+                                ConsumerMetrics consumerMetrics,
+                                ConsumerLogging consumerLogging,
+                                ConsumerFlowController flowController,
+                                ProductBootstrap productBootstrap,
+                                @Qualifier("persistenceScheduler") Scheduler persistenceScheduler,
+                                @Value("${consumer.partitionParallelism:0}") int partitionParallelism,
+                                @Value("${consumer.maxInFlightBatches:4}") int maxInFlightBatches,
+                                @Value("${consumer.columnar.enabled:false}") boolean columnarBatches,
+                                @Value("${product.compacted:false}") boolean compacted,
+                                @Value("${consumer.restartDelay:PT5S}") Duration restartDelay) {
         this.reactiveKafkaConsumerTemplate = reactiveKafkaConsumerTemplate;
-        this.productRepository = productRepository;
         this.productMapper = productMapper;
-        this.bufferSize = bufferSize;
+        this.productBatchWriter = productBatchWriter;
+        this.productColumnsPool = productColumnsPool;
+        this.recentProductCache = recentProductCache;
+        this.batchController = batchController;
+        this.consumerMetrics = consumerMetrics;
+        this.consumerLogging = consumerLogging;
+        this.flowController = flowController;
+        this.productBootstrap = productBootstrap;
+        this.partitionParallelism = partitionParallelism;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.columnarBatches = columnarBatches;
+        this.compacted = compacted;
+        this.restartDelay = restartDelay;
+        this.persistenceScheduler = persistenceScheduler;
     }
 
+    /**
+     * Consumes until the application stops, once the bootstrap, if any, loaded the topic. Should the pipeline
+     * fail, it is resubscribed after the restart delay and resumes from the last committed offsets.
+     */
     @EventListener(ApplicationStartedEvent.class)
     public Disposable consume() {
-        return consumeProducts().subscribe();
+        return productBootstrap.bootstrap()
+                .thenMany(Flux.defer(() -> {
+                            flowController.reset(); // a new consumer redelivers everything not committed
+                            return consumeProducts();
+                        })
+                        .repeatWhen(completions -> completions.delayElements(restartDelay)))
+                .subscribe();
     }
 
+    /**
+     * @return the products written per batch, empty for columnar batches as their products are never materialized
+     */
     public Flux<List<Product>> consumeProducts() {
-        return reactiveKafkaConsumerTemplate
-                .receiveAutoAck()
-                .doOnError(error -> log.error("Error receiving event, will retry", error)) // log error in case of receiving issues
+        Flux<ReceiverRecord<String, ProductDto>> records = reactiveKafkaConsumerTemplate
+                .receive()
+                .doOnError(error -> {
+                    consumerMetrics.error("receive");
+                    log.error("Error receiving event, will retry", error);
+                }) // log error in case of receiving issues
                 .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, Duration.ofMinutes(1))) // retry if there are receiving issues
-                .doOnNext(consumerRecord -> log.info("Processing record with key={}, value={} from topic={}, offset={}.",
-                        consumerRecord.key(),
-                        consumerRecord.value(),
-                        consumerRecord.topic(),
-                        consumerRecord.offset())
-                ) // log processing started
-                .map(ConsumerRecord::value)
-                .map(productMapper::toProduct) // convert to entity - product
-                .buffer(bufferSize) // buffer up to bufferSize
-                .publishOn(Schedulers.boundedElastic()) // delegate following processing to different worker thread pool
-                .doOnNext(products -> {
-                    productRepository.saveAll(products).subscribe();
-                    log.info("Successfully processed events: uuids - {}", products.stream().map(Product::getUuid)
-                            .collect(Collectors.joining(", ")));
-                }) // save products to database and log
-                .doOnError(throwable -> log.error("Error during product processing. Details : {}", throwable.getMessage()))
+                .doOnNext(consumerRecord -> {
+                    consumerMetrics.recordReceived(consumerRecord.receiverOffset().topicPartition());
+                    consumerLogging.record(consumerRecord);
+                    flowController.onReceived(); // pauses the partitions when too many records wait
+                }); // log processing started, sampled
+
+        Flux<ProductBatch> batches = partitionParallelism > 0 || compacted
+                ? processPerPartition(records)
+                : processSingleRail(records);
+
+        return batches
+                .map(ProductBatch::getProducts)
+                .doOnError(throwable -> {
+                    consumerMetrics.error("processing");
+                    log.error("Error during product processing. Details : {}", throwable.getMessage());
+                })
                 .onErrorResume(ex -> Flux.just(Collections.emptyList())); // move processing forward if errors appear in processing
     }
 
+    private Flux<ProductBatch> processSingleRail(Flux<ReceiverRecord<String, ProductDto>> records) {
+        return records
+                .bufferTimeout(batchController.getMaxBatchSize(), batchController.getMaxLinger(), true) // buffer up to max size or linger
+                .flatMapIterable(batchController::split) // write batches of the current adaptive size
+                .map(this::toBatch) // convert to entities - products, or pooled columns
+                .publishOn(persistenceScheduler, maxInFlightBatches) // delegate following processing to different worker thread pool
+                .concatMap(this::write) // one write at a time, a batch never overtakes the earlier updates of its uuids
+                .concatMap(this::commit); // commit offsets only once the batch is saved or dead-lettered
+    }
+
+    private Flux<ProductBatch> processPerPartition(Flux<ReceiverRecord<String, ProductDto>> records) {
+        return records
+                .groupBy(receiverRecord -> receiverRecord.receiverOffset().topicPartition())
+                .flatMap(partition -> partition
+                        .publishOn(persistenceScheduler) // one rail per partition, parallelism bounded by the scheduler
+                        .bufferTimeout(batchController.getMaxBatchSize(), batchController.getMaxLinger(), true)
+                        .flatMapIterable(batchController::split)
+                        .map(this::toBatch)
+                        .concatMap(this::write) // batches of a partition are saved in order
+                        .concatMap(this::commit), MAX_ASSIGNED_PARTITIONS);
+    }
+
+    private ProductBatch toBatch(List<ReceiverRecord<String, ProductDto>> records) {
+        if (columnarBatches) {
+            return toColumnarBatch(records);
+        }
+        Map<String, Product> latestByUuid = new LinkedHashMap<>();
+        Map<String, ReceiverRecord<String, ProductDto>> latestRecordByUuid = new LinkedHashMap<>();
+        List<ProductBatch.RejectedRecord> rejected = new ArrayList<>(0);
+        Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        Map<TopicPartition, ReceiverOffset> lastOffsets = new HashMap<>();
+        long bytes = 0;
+        for (ReceiverRecord<String, ProductDto> receiverRecord : records) {
+            IllegalArgumentException decodeError = ProductDtoDeserializer.decodeError(receiverRecord.headers());
+            if (decodeError != null) {
+                consumerMetrics.error("decoding");
+                rejected.add(new ProductBatch.RejectedRecord(receiverRecord, decodeError)); // not a tombstone
+            } else if (isTombstone(receiverRecord)) {
+                log.debug("Skipping tombstone of product {}", receiverRecord.key()); // committed with the batch
+            } else {
+                try {
+                    Product product = toProduct(receiverRecord);
+                    if (!recentProductCache.isReplay(product)) {
+                        latestByUuid.put(product.getUuid(), product); // later records of a uuid win inside the batch
+                        latestRecordByUuid.put(product.getUuid(), receiverRecord);
+                    }
+                } catch (RuntimeException e) {
+                    consumerMetrics.error("mapping");
+                    rejected.add(new ProductBatch.RejectedRecord(receiverRecord, e)); // isolated, the batch goes on
+                }
+            }
+            ReceiverOffset receiverOffset = receiverRecord.receiverOffset();
+            firstOffsets.putIfAbsent(receiverOffset.topicPartition(), receiverOffset.offset());
+            lastOffsets.put(receiverOffset.topicPartition(), receiverOffset);
+            bytes += Math.max(0, receiverRecord.serializedValueSize());
+        }
+        return new ProductBatch(new ArrayList<>(latestByUuid.values()), null, new ArrayList<>(latestRecordByUuid.values()),
+                rejected, firstOffsets, lastOffsets, records.size(), bytes);
+    }
+
+    /**
+     * Columnar counterpart of {@link #toBatch(List)}: products go straight from the dto into pooled columns, which
+     * deduplicate the uuids themselves. Replays are not looked up in the cache, which would need a product per
+     * record, the idempotent upsert absorbs them.
+     */
+    private ProductBatch toColumnarBatch(List<ReceiverRecord<String, ProductDto>> records) {
+        ProductColumns columns = productColumnsPool.acquire();
+        List<ReceiverRecord<String, ProductDto>> rowRecords = new ArrayList<>(records.size());
+        List<ProductBatch.RejectedRecord> rejected = new ArrayList<>(0);
+        Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        Map<TopicPartition, ReceiverOffset> lastOffsets = new HashMap<>();
+        long bytes = 0;
+        for (ReceiverRecord<String, ProductDto> receiverRecord : records) {
+            ProductDto productDto = receiverRecord.value();
+            IllegalArgumentException decodeError = ProductDtoDeserializer.decodeError(receiverRecord.headers());
+            if (decodeError != null) {
+                consumerMetrics.error("decoding");
+                rejected.add(new ProductBatch.RejectedRecord(receiverRecord, decodeError)); // not a tombstone
+            } else if (isTombstone(receiverRecord)) {
+                log.debug("Skipping tombstone of product {}", receiverRecord.key()); // committed with the batch
+            } else if (productDto == null || productDto.getUuid() == null || !isKeyedByUuid(receiverRecord)) {
+                consumerMetrics.error("mapping");
+                rejected.add(new ProductBatch.RejectedRecord(receiverRecord,
+                        new IllegalArgumentException("Record has no product uuid, or a key other than the uuid")));
+            } else {
+                int row = columns.add(productDto.getUuid(), productDto.getName(), productDto.getDescription(),
+                        productDto.getPrice());
+                if (row == rowRecords.size()) {
+                    rowRecords.add(receiverRecord);
+                } else {
+                    rowRecords.set(row, receiverRecord); // later records of a uuid win inside the batch
+                }
+            }
+            ReceiverOffset receiverOffset = receiverRecord.receiverOffset();
+            firstOffsets.putIfAbsent(receiverOffset.topicPartition(), receiverOffset.offset());
+            lastOffsets.put(receiverOffset.topicPartition(), receiverOffset);
+            bytes += Math.max(0, receiverRecord.serializedValueSize());
+        }
+        return new ProductBatch(List.of(), columns, rowRecords, rejected, firstOffsets, lastOffsets, records.size(), bytes);
+    }
+
+    private Product toProduct(ReceiverRecord<String, ProductDto> receiverRecord) {
+        if (receiverRecord.value() == null) {
+            throw new IllegalArgumentException("Record has no product value");
+        }
+        Product product = productMapper.toProduct(receiverRecord.value());
+        if (product.getUuid() == null) {
+            throw new IllegalArgumentException("Product has no uuid");
+        }
+        if (!isKeyedByUuid(receiverRecord)) {
+            throw new IllegalArgumentException("Record key " + receiverRecord.key() + " is not the product uuid");
+        }
+        return product;
+    }
+
+    /**
+     * A compacted topic deletes the earlier records of a key with a record without value. Deletes are not applied
+     * to the database, the products stay as last written.
+     */
+    private boolean isTombstone(ReceiverRecord<String, ProductDto> receiverRecord) {
+        return compacted && receiverRecord.key() != null && receiverRecord.value() == null;
+    }
+
+    /**
+     * Compaction keeps the latest record per key, which loses products unless the key is their uuid.
+     */
+    private boolean isKeyedByUuid(ReceiverRecord<String, ProductDto> receiverRecord) {
+        return !compacted || receiverRecord.key() == null || receiverRecord.key().equals(receiverRecord.value().getUuid());
+    }
+
+    /**
+     * Writes run under the concurrency limit of the flow controller, shared by every partition rail. Batches that
+     * can not reach the database are spooled to disk with {@code consumer.spool.enabled=true}.
+     */
+    private Mono<ProductBatch> write(ProductBatch batch) {
+        return flowController.withPermit(productBatchWriter.writeOrSpool(batch));
+    }
+
+    private Mono<ProductBatch> commit(ProductBatch batch) {
+        consumerLogging.batch(batch);
+        consumerMetrics.committed(batch.getRecords()); // bisected batches keep no records and are not measured
+        if (batch.getColumns() != null) {
+            productColumnsPool.release(batch.getColumns()); // written, the columns can take the next batch
+        }
+        return batch.commit()
+                .doOnSuccess(committed -> flowController.onCommitted(batch.getRecordCount()))
+                .thenReturn(batch);
+    }
 }
@@ -1,50 +1,84 @@
 package com.nordcloud.kafkaservice.service;
 
+import com.nordcloud.kafkaservice.configuration.ProducerRole;
+import com.nordcloud.kafkaservice.metrics.ProducerMetrics;
 import com.nordcloud.kafkaservice.model.dto.ProductDto;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.context.event.ApplicationStartedEvent;
-import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.kafka.sender.SenderRecord;
+import reactor.kafka.sender.SenderResult;
 
-import java.util.UUID;
-import java.util.stream.IntStream;
-
+/**
+ * Sends products keyed by their uuid, so all updates of a product land on one partition, in order, and a compacted
+ * topic keeps the latest of them. The partition of a key is chosen by the {@code producer.partitioner}.
+ */
 @Service
 @Slf4j
+@ProducerRole
 public class KafkaProducerService {
-    public static final String PRODUCT = "Prod-";
 
     private final ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate;
+    private final ProducerMetrics producerMetrics;
 
     @Value(value = "${product.topic}")
     private String topic;
 
-    public KafkaProducerService(ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate) {
+    public KafkaProducerService(ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate,
+                                ProducerMetrics producerMetrics) {
         this.reactiveKafkaProducerTemplate = reactiveKafkaProducerTemplate;
+        this.producerMetrics = producerMetrics;
     }
 
     public void send(ProductDto productDto) {
-        log.info("Sending to topic={}, {}={},", topic, ProductDto.class.getSimpleName(), productDto);
-        reactiveKafkaProducerTemplate.send(topic, productDto)
-                .doOnSuccess(senderResult -> log.info("Sent product {} offset : {}", productDto,
-                        senderResult.recordMetadata().offset()))
+        if (log.isDebugEnabled()) {
+            log.debug("Sending to topic={}, {}={},", topic, ProductDto.class.getSimpleName(), productDto);
+        }
+        long start = System.nanoTime();
+        reactiveKafkaProducerTemplate.send(topic, productDto.getUuid(), productDto)
+                .doOnSuccess(senderResult -> {
+                    RecordMetadata metadata = senderResult.recordMetadata();
+                    producerMetrics.sent(new TopicPartition(metadata.topic(), metadata.partition()), System.nanoTime() - start);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Sent product {} offset : {}", productDto, metadata.offset());
+                    }
+                })
+                .doOnError(error -> producerMetrics.failed(topic))
                 .subscribe();
     }
 
-    @EventListener(ApplicationStartedEvent.class)
-    public void produce() {
-        IntStream.range(0, 100)
-                .forEach(value -> {
-                    String uuid = UUID.randomUUID().toString();
-                    ProductDto productDto = ProductDto.builder()
-                            .uuid(uuid)
-                            .name(PRODUCT + uuid)
-                            .description(PRODUCT + uuid)
-                            .price(Math.floor(Math.random() * (100 + 1) + 0.1))
-                            .build();
-                    send(productDto);
+    /**
+     * Sends every product through one backpressured sender pipeline, at most maxInFlight records unacknowledged.
+     * Each result carries its input as correlation metadata and failures are reported per record, they do not
+     * terminate the returned flux.
+     */
+    public Flux<SenderResult<ProductDto>> sendAll(Flux<ProductDto> productDtos) {
+        return reactiveKafkaProducerTemplate
+                .send(productDtos.map(productDto -> SenderRecord.<String, ProductDto, TimedProduct>create(
+                        topic, null, null, productDto.getUuid(), productDto, new TimedProduct(productDto, System.nanoTime()))))
+                .map(senderResult -> {
+                    TimedProduct timedProduct = senderResult.correlationMetadata();
+                    if (senderResult.exception() != null) {
+                        producerMetrics.failed(topic);
+                        log.error("Failed to send product {}", timedProduct.productDto(), senderResult.exception());
+                    } else {
+                        RecordMetadata metadata = senderResult.recordMetadata();
+                        producerMetrics.sent(new TopicPartition(metadata.topic(), metadata.partition()),
+                                System.nanoTime() - timedProduct.sentAtNanos());
+                    }
+                    return new ProductSendResult(senderResult.recordMetadata(), senderResult.exception(),
+                            timedProduct.productDto());
                 });
     }
+
+    private record TimedProduct(ProductDto productDto, long sentAtNanos) {
+    }
+
+    private record ProductSendResult(RecordMetadata recordMetadata, Exception exception, ProductDto correlationMetadata)
+            implements SenderResult<ProductDto> {
+    }
 }
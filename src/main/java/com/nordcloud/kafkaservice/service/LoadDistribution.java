@@ -0,0 +1,28 @@
+package com.nordcloud.kafkaservice.service;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribution of the payload sizes and keys drawn by the {@link LoadGenerator}.
+ */
+public enum LoadDistribution {
+
+    /** always the maximum: payloads of one size, or a single hot key */
+    FIXED,
+    /** every value between minimum and maximum equally likely */
+    UNIFORM,
+    /** log-uniform, close to Zipf with exponent 1: small payloads and the first keys dominate */
+    ZIPF;
+
+    /**
+     * @return a value between min and max, both inclusive
+     */
+    public int next(SplittableRandom random, int min, int max) {
+        int range = max - min;
+        return switch (this) {
+            case FIXED -> max;
+            case UNIFORM -> min + random.nextInt(range + 1);
+            case ZIPF -> min + Math.min(range, (int) Math.exp(random.nextDouble() * Math.log(range + 2D)) - 1);
+        };
+    }
+}
@@ -0,0 +1,232 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ProducerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for capacity planning, enabled with {@code loadgen.enabled=true} and run once at startup. Sends
+ * {@code loadgen.count} products, or for {@code loadgen.duration}, at {@code loadgen.rate} products per second with
+ * the configured payload size and key distributions, every product stamped with its send time. The consumer records
+ * the latency from that stamp to the database commit in an HDR histogram, reported once the sent products are
+ * committed or no more commit for {@code loadgen.drainTimeout}.
+ * <p>
+ * Throttled products are stamped with the time the schedule meant to send them, so a stalled producer shows up as
+ * latency instead of as a lower rate. Products superseded by a later one of the same uuid in their batch are never
+ * written and not measured.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "loadgen.enabled", havingValue = "true")
+@ProducerRole
+public class LoadGenerator {
+
+    public static final String PRODUCT = "Prod-";
+
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static final Duration DRAIN_POLL = Duration.ofMillis(100);
+    private static final String FILLER = "x".repeat(1 << 16);
+
+    private final KafkaProducerService kafkaProducerService;
+    private final ConsumerMetrics consumerMetrics;
+    private final long rate;
+    private final long count;
+    private final Duration duration;
+    private final LoadDistribution payloadDistribution;
+    private final int payloadMinBytes;
+    private final int payloadMaxBytes;
+    private final LoadDistribution keyDistribution;
+    private final int keyCount;
+    private final Duration drainTimeout;
+    private final String reportFile;
+
+    public LoadGenerator(KafkaProducerService kafkaProducerService,
+                         ConsumerMetrics consumerMetrics,
+                         @Value("${loadgen.rate:1000}") long rate,
+                         @Value("${loadgen.count:100000}") long count,
+                         @Value("${loadgen.duration:PT0S}") Duration duration,
+                         @Value("${loadgen.payload.distribution:FIXED}") LoadDistribution payloadDistribution,
+                         @Value("${loadgen.payload.minBytes:16}") int payloadMinBytes,
+                         @Value("${loadgen.payload.maxBytes:256}") int payloadMaxBytes,
+                         @Value("${loadgen.keys.distribution:UNIFORM}") LoadDistribution keyDistribution,
+                         @Value("${loadgen.keys.count:0}") int keyCount,
+                         @Value("${loadgen.drainTimeout:PT30S}") Duration drainTimeout,
+                         @Value("${loadgen.reportFile:}") String reportFile) {
+        this.kafkaProducerService = kafkaProducerService;
+        this.consumerMetrics = consumerMetrics;
+        this.rate = rate;
+        this.count = count;
+        this.duration = duration;
+        this.payloadDistribution = payloadDistribution;
+        this.payloadMinBytes = Math.max(0, Math.min(payloadMinBytes, FILLER.length()));
+        this.payloadMaxBytes = Math.max(this.payloadMinBytes, Math.min(payloadMaxBytes, FILLER.length()));
+        this.keyDistribution = keyDistribution;
+        this.keyCount = keyCount;
+        this.drainTimeout = drainTimeout;
+        this.reportFile = reportFile;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public Disposable generate() {
+        return run().subscribe(report -> log.info("Load generation finished: {}", report),
+                error -> log.error("Load generation failed", error));
+    }
+
+    /**
+     * Sends the configured load and waits for the consumer to commit it.
+     *
+     * @return the products sent and the end-to-end latency of the ones committed by this run
+     */
+    public Mono<LoadReport> run() {
+        return Mono.defer(() -> {
+            Histogram before = consumerMetrics.endToEndLatency();
+            AtomicLong failed = new AtomicLong();
+            long start = System.nanoTime();
+            log.info("Generating load: rate={}/s, count={}, duration={}", rate, count, duration);
+            return kafkaProducerService.sendAll(products())
+                    .doOnNext(senderResult -> {
+                        if (senderResult.exception() != null) {
+                            failed.incrementAndGet();
+                        }
+                    })
+                    .count()
+                    .flatMap(total -> {
+                        long sent = total - failed.get();
+                        Duration sendTime = Duration.ofNanos(System.nanoTime() - start);
+                        return awaitCommitted(before.getTotalCount() + sent)
+                                .then(Mono.fromSupplier(() -> {
+                                    Histogram latency = consumerMetrics.endToEndLatency();
+                                    latency.subtract(before); // only this run
+                                    writeReportFile(latency);
+                                    return new LoadReport(sent, failed.get(), sendTime, latency);
+                                }));
+                    });
+        });
+    }
+
+    private Flux<ProductDto> products() {
+        return Flux.defer(() -> {
+            LoadRun run = new LoadRun();
+            Flux<ProductDto> products = rate > 0
+                    ? Flux.interval(TICK)
+                            .onBackpressureDrop() // the next tick catches up, products keep their scheduled send time
+                            .concatMap(tick -> run.due(), 1)
+                    : Flux.<ProductDto>generate(sink -> sink.next(run.next(ConsumerMetrics.epochMicros(Instant.now()))));
+            if (count > 0) {
+                products = products.take(count);
+            }
+            if (!duration.isZero()) {
+                products = products.take(duration);
+            }
+            return products;
+        });
+    }
+
+    /**
+     * Waits until the expected number of stamped products is committed or no more is committed for the drain
+     * timeout, which is the case as well when the consumer runs in another process.
+     */
+    private Mono<Void> awaitCommitted(long expected) {
+        return Flux.interval(DRAIN_POLL)
+                .map(tick -> consumerMetrics.endToEndLatency().getTotalCount())
+                .distinctUntilChanged() // only progress resets the timeout
+                .takeUntil(committed -> committed >= expected)
+                .timeout(drainTimeout)
+                .onErrorResume(TimeoutException.class, error -> {
+                    log.warn("Stopped waiting for the load to be committed, nothing committed for {}", drainTimeout);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void writeReportFile(Histogram latency) {
+        if (reportFile.isBlank()) {
+            return;
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(Path.of(reportFile)))) {
+            latency.outputPercentileDistribution(out, 1000.0); // in milliseconds, plottable with the HdrHistogram tools
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * State of one run, only touched by the sequential product flux.
+     */
+    private final class LoadRun {
+
+        private final SplittableRandom random = new SplittableRandom();
+        private final String[] keys = new String[Math.max(0, keyCount)];
+        private final long startNanos = System.nanoTime();
+        private final long startMicros = ConsumerMetrics.epochMicros(Instant.now());
+        private long scheduled;
+
+        /**
+         * @return the products the schedule should have sent by now and did not yet
+         */
+        Flux<ProductDto> due() {
+            long due = (long) ((System.nanoTime() - startNanos) / 1e9 * rate);
+            long from = scheduled;
+            scheduled = Math.max(scheduled, due);
+            return Flux.range(0, (int) Math.min(Integer.MAX_VALUE, scheduled - from))
+                    .map(index -> next(startMicros + (from + index) * 1_000_000 / rate));
+        }
+
+        ProductDto next(long sentAt) {
+            String uuid = key();
+            int payloadBytes = payloadDistribution.next(random, payloadMinBytes, payloadMaxBytes);
+            return new ProductDto(uuid, PRODUCT + uuid, FILLER.substring(0, payloadBytes),
+                    Math.floor(random.nextDouble() * 100 + 0.1), sentAt);
+        }
+
+        private String key() {
+            if (keyCount <= 0) {
+                return UUID.randomUUID().toString(); // every product new
+            }
+            int index = keyDistribution.next(random, 0, keyCount - 1);
+            if (keys[index] == null) {
+                keys[index] = UUID.randomUUID().toString();
+            }
+            return keys[index];
+        }
+    }
+
+    /**
+     * Outcome of one run, latencies in microseconds.
+     */
+    public record LoadReport(long sent, long failed, Duration sendTime, Histogram latency) {
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1, sendTime.toMillis()) / 1000.0;
+            return String.format("sent=%d failed=%d in %s (%.0f/s), committed=%d, end-to-end latency ms "
+                            + "p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f",
+                    sent, failed, sendTime, sent / seconds, latency.getTotalCount(),
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(90) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0, latency.getValueAtPercentile(99.9) / 1000.0,
+                    latency.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.repository.ProductPartitioning;
+import com.nordcloud.kafkaservice.repository.ProductPartitions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Maintains the day partitions of {@code persistence.partitioning=TIME}: every
+ * {@code persistence.maintenanceInterval} the partition of the next day is created and the days older than
+ * {@code persistence.retention} are dropped, instead of deleting expired rows.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class PartitionRetentionJob {
+
+    private final ProductPartitions productPartitions;
+    private final Duration retention;
+    private final Duration interval;
+
+    public PartitionRetentionJob(ProductPartitions productPartitions,
+                                 @Value("${persistence.retention:P30D}") Duration retention,
+                                 @Value("${persistence.maintenanceInterval:PT1H}") Duration interval) {
+        this.productPartitions = productPartitions;
+        this.retention = retention;
+        this.interval = interval;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public Disposable schedule() {
+        if (productPartitions.getPartitioning() != ProductPartitioning.TIME) {
+            return Flux.never().subscribe();
+        }
+        return Flux.interval(Duration.ZERO, interval)
+                .concatMap(tick -> maintain()
+                        .onErrorResume(error -> {
+                            log.warn("Product partition maintenance failed, will retry: {}", error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    /**
+     * @return number of dropped partitions
+     */
+    public Mono<Long> maintain() {
+        return productPartitions.createAhead()
+                .thenMany(productPartitions.dropExpired(retention))
+                .count();
+    }
+}
@@ -0,0 +1,85 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.kafka.common.TopicPartition;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.kafka.receiver.ReceiverRecord;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Products buffered from Kafka together with the offset range received for every partition in the batch.
+ * {@code records} holds the record each product was mapped from, at the same index, and {@code rejected} the
+ * records that could not be mapped at all. Columnar batches carry their products in pooled {@code columns}
+ * instead, with an empty {@code products} list.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductBatch {
+
+    private final List<Product> products;
+    private final ProductColumns columns;
+    private final List<ReceiverRecord<String, ProductDto>> records;
+    private final List<RejectedRecord> rejected;
+    private final Map<TopicPartition, Long> firstOffsets;
+    private final Map<TopicPartition, ReceiverOffset> lastOffsets;
+    private final int recordCount;
+    private final long bytes;
+
+    public int getProductCount() {
+        return columns != null ? columns.size() : products.size();
+    }
+
+    /**
+     * Same batch, reduced to the products that were actually written.
+     */
+    public ProductBatch withProducts(List<Product> written) {
+        return new ProductBatch(written, null, List.of(), rejected, firstOffsets, lastOffsets, recordCount, bytes);
+    }
+
+    /**
+     * Same batch with the columns materialized as products, for the error handling that works per record.
+     */
+    public ProductBatch toProductBatch() {
+        return new ProductBatch(columns.toProducts(), null, records, rejected, firstOffsets, lastOffsets, recordCount, bytes);
+    }
+
+    /**
+     * Acknowledges the last offset of every partition and commits them, to be called once the batch is durable.
+     */
+    public Mono<Void> commit() {
+        if (lastOffsets.isEmpty()) {
+            return Mono.empty();
+        }
+        ReceiverOffset last = null;
+        for (ReceiverOffset offset : lastOffsets.values()) {
+            offset.acknowledge();
+            last = offset;
+        }
+        return last.commit(); // commits every acknowledged offset, not only this one
+    }
+
+    /**
+     * Offset range per partition, as topic-partition[first..last].
+     */
+    public String describeOffsets() {
+        StringBuilder description = new StringBuilder();
+        lastOffsets.forEach((topicPartition, last) -> {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(topicPartition).append('[').append(firstOffsets.get(topicPartition))
+                    .append("..").append(last.offset()).append(']');
+        });
+        return description.toString();
+    }
+
+    public record RejectedRecord(ReceiverRecord<String, ProductDto> receiverRecord, Throwable error) {
+    }
+}
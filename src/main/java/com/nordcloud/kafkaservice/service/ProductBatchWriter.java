@@ -0,0 +1,269 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
+import com.nordcloud.kafkaservice.repository.ProductBulkRepository;
+import io.r2dbc.spi.R2dbcBadGrammarException;
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Writes product batches with error isolation. Failures caused by the data (constraint violations, bad values)
+ * bisect the batch until the poison record is found, which is retried on its own with exponential backoff and
+ * then routed to the dead-letter topic, while the rest of the batch is written. Any other failure, such as the
+ * database being unreachable, retries the whole batch with backoff and then fails it, or with
+ * {@link #writeOrSpool(ProductBatch)} appends it to the {@link ProductSpool} so consumption goes on.
+ * <p>
+ * Writes go to the primary {@link ProductBulkRepository}: the R2DBC {@code ProductRepository}, or the
+ * {@code JdbcProductRepository} with {@code persistence.driver=JDBC}.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class ProductBatchWriter {
+
+    private final ProductBulkRepository productRepository;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final ProductSpool productSpool;
+    private final ProductColumnsPool productColumnsPool;
+    private final RecentProductCache recentProductCache;
+    private final ProductCache productCache;
+    private final AdaptiveBatchController batchController;
+    private final ConsumerMetrics consumerMetrics;
+    private final BulkWriteMode writeMode;
+    private final RetryBackoffSpec retry;
+
+    public ProductBatchWriter(ProductBulkRepository productRepository,
+                              DeadLetterPublisher deadLetterPublisher,
+                              ProductSpool productSpool,
+                              ProductColumnsPool productColumnsPool,
+                              RecentProductCache recentProductCache,
+                              ProductCache productCache,
+                              AdaptiveBatchController batchController,
+                              ConsumerMetrics consumerMetrics,
+                              @Value("${persistence.writeMode:PER_ROW}") BulkWriteMode writeMode,
+                              @Value("${consumer.retry.maxAttempts:3}") int maxAttempts,
+                              @Value("${consumer.retry.minBackoff:PT0.1S}") Duration minBackoff,
+                              @Value("${consumer.retry.maxBackoff:PT5S}") Duration maxBackoff) {
+        this.productRepository = productRepository;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.productSpool = productSpool;
+        this.productColumnsPool = productColumnsPool;
+        this.recentProductCache = recentProductCache;
+        this.productCache = productCache;
+        this.batchController = batchController;
+        this.consumerMetrics = consumerMetrics;
+        this.writeMode = writeMode;
+        this.retry = Retry.backoff(maxAttempts, minBackoff)
+                .maxBackoff(maxBackoff)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()); // surface the original failure
+    }
+
+    /**
+     * Writes the batch and dead-letters what can not be written.
+     *
+     * @return the batch reduced to the products that were written
+     */
+    public Mono<ProductBatch> write(ProductBatch batch) {
+        return write(batch, deadLetterPublisher);
+    }
+
+    /**
+     * Same as {@link #write(ProductBatch)}, dead-lettering through the given publisher.
+     */
+    public Mono<ProductBatch> write(ProductBatch batch, DeadLetterPublisher deadLetters) {
+        AtomicReference<ProductBatch> owner = new AtomicReference<>(batch);
+        return releaseColumnsOnFailure(owner, writeBatch(owner, deadLetters));
+    }
+
+    /**
+     * @param owner the batch holding the pooled columns, swapped for its materialized products once they are handed
+     *              back to the pool
+     */
+    private Mono<ProductBatch> writeBatch(AtomicReference<ProductBatch> owner, DeadLetterPublisher deadLetters) {
+        ProductBatch batch = owner.get();
+        Mono<ProductBatch> written = batch.getColumns() != null
+                ? writeColumns(batch, owner, deadLetters)
+                : writeProducts(batch, deadLetters);
+        return written
+                .flatMap(writtenBatch -> deadLetterRejected(batch, deadLetters).then(Mono.just(writtenBatch)))
+                .doOnNext(writtenBatch -> {
+                    recentProductCache.remember(writtenBatch.getProducts());
+                    productCache.putAll(writtenBatch); // write-through for readers
+                });
+    }
+
+    /**
+     * Same as {@link #write(ProductBatch)}, except that a batch failing for any other reason than its data is
+     * appended to the spool, as is every batch while spooled ones wait to be drained, to keep the order of the
+     * updates of a uuid. Fails as {@link #write(ProductBatch)} does when the spool is disabled or full.
+     * <p>
+     * Spooling or writing is decided when the write starts, so the batches of a partition have to be written one
+     * after the other, as both consumer rails do: a batch then starts once the earlier batches of its partition are
+     * written or spooled. The updates of a uuid share a partition, batches of other partitions failing meanwhile
+     * only hold other uuids.
+     *
+     * @return the batch reduced to the products that were written or spooled
+     */
+    public Mono<ProductBatch> writeOrSpool(ProductBatch batch) {
+        AtomicReference<ProductBatch> owner = new AtomicReference<>(batch);
+        return releaseColumnsOnFailure(owner, Mono.defer(() -> productSpool.isEmpty()
+                ? writeBatch(owner, deadLetterPublisher)
+                        .onErrorResume(error -> productSpool.isEnabled() && !isPoison(error),
+                                error -> spool(owner.get(), error)) // the materialized batch once columns are released
+                : spool(batch, null)));
+    }
+
+    /**
+     * Columns of a failed batch go back to the pool, as the batch never reaches its commit, unless the poison
+     * fallback already handed them back. Columns of a written batch are released once its offsets are committed.
+     */
+    private Mono<ProductBatch> releaseColumnsOnFailure(AtomicReference<ProductBatch> owner,
+                                                       Mono<ProductBatch> written) {
+        if (owner.get().getColumns() == null) {
+            return written;
+        }
+        return written.doFinally(signal -> {
+            if (signal == SignalType.ON_ERROR || signal == SignalType.CANCEL) {
+                ProductBatch owning = owner.getAndSet(null); // a fallback still running can no longer take them
+                if (owning != null && owning.getColumns() != null) {
+                    productColumnsPool.release(owning.getColumns());
+                }
+            }
+        });
+    }
+
+    private Mono<ProductBatch> spool(ProductBatch batch, Throwable writeError) {
+        return Mono.fromCallable(() -> productSpool.append(batch))
+                .flatMap(spooled -> {
+                    if (!spooled) {
+                        consumerMetrics.error("spool");
+                        return Mono.error(writeError != null ? writeError
+                                : new IllegalStateException("Product spool is full, the batch is left uncommitted"));
+                    }
+                    if (writeError != null) { // only the first batch of an outage is logged
+                        log.warn("Spooling batches until the database is back, starting with {}. Details : {}",
+                                batch.describeOffsets(), writeError.getMessage());
+                    }
+                    return deadLetterRejected(batch, deadLetterPublisher).then(Mono.just(batch));
+                });
+    }
+
+    private Mono<Void> deadLetterRejected(ProductBatch batch, DeadLetterPublisher deadLetters) {
+        return Flux.fromIterable(batch.getRejected())
+                .concatMap(rejected -> deadLetters.publish(rejected.receiverRecord(), rejected.error()))
+                .then();
+    }
+
+    /**
+     * Columnar batches are written straight from their columns. Isolating poison records works per product, so
+     * a failing columnar batch is materialized first and its columns returned to the pool: the materialized batch
+     * replaces it as the owner, so a later failure neither releases the columns again nor spools them.
+     */
+    private Mono<ProductBatch> writeColumns(ProductBatch batch, AtomicReference<ProductBatch> owner,
+                                            DeadLetterPublisher deadLetters) {
+        ProductColumns columns = batch.getColumns();
+        return timed(() -> productRepository.upsertColumns(columns, writeMode), columns.size())
+                .retryWhen(retry.filter(error -> !isPoison(error)))
+                .thenReturn(batch)
+                .onErrorResume(ProductBatchWriter::isPoison, error -> {
+                    ProductBatch products = batch.toProductBatch();
+                    if (!owner.compareAndSet(batch, products)) {
+                        return Mono.empty(); // cancelled meanwhile, the columns are already back in the pool
+                    }
+                    productColumnsPool.release(columns); // the materialized batch no longer refers to them
+                    return writeProducts(products, deadLetters);
+                });
+    }
+
+    private Mono<ProductBatch> writeProducts(ProductBatch batch, DeadLetterPublisher deadLetters) {
+        return upsert(batch.getProducts())
+                .retryWhen(retry.filter(error -> !isPoison(error)))
+                .thenReturn(batch)
+                .onErrorResume(ProductBatchWriter::isPoison, error -> {
+                    consumerMetrics.error("write");
+                    log.error("Error during product processing, isolating the failing records. Details : {}",
+                            error.getMessage());
+                    return bisect(batch, 0, batch.getProducts().size(), error, deadLetters)
+                            .collectList()
+                            .map(batch::withProducts);
+                });
+    }
+
+    private Flux<Product> bisect(ProductBatch batch, int from, int to, Throwable error,
+                                 DeadLetterPublisher deadLetters) {
+        if (to - from == 1) {
+            Product product = batch.getProducts().get(from);
+            return upsert(List.of(product))
+                    .retryWhen(retry)
+                    .thenMany(Flux.just(product))
+                    .onErrorResume(ProductBatchWriter::isPoison, retryError -> {
+                        consumerMetrics.error("dead-letter");
+                        return deadLetters.publish(batch.getRecords().get(from), retryError).thenMany(Flux.empty());
+                    });
+        }
+        int middle = (from + to) >>> 1;
+        return Flux.concat(writeOrBisect(batch, from, middle, deadLetters),
+                writeOrBisect(batch, middle, to, deadLetters));
+    }
+
+    private Flux<Product> writeOrBisect(ProductBatch batch, int from, int to, DeadLetterPublisher deadLetters) {
+        List<Product> slice = batch.getProducts().subList(from, to);
+        return upsert(slice)
+                .thenMany(Flux.fromIterable(slice))
+                .onErrorResume(ProductBatchWriter::isPoison, error -> bisect(batch, from, to, error, deadLetters));
+    }
+
+    private Mono<Long> upsert(List<Product> products) {
+        return timed(() -> productRepository.upsertAll(products, writeMode), products.size());
+    }
+
+    private Mono<Long> timed(Supplier<Mono<Long>> write, int products) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return write.get()
+                    .doOnSuccess(rows -> {
+                        long writeNanos = System.nanoTime() - start;
+                        batchController.onWrite(writeNanos);
+                        consumerMetrics.batchWritten(products, writeNanos);
+                    });
+        });
+    }
+
+    /**
+     * Failures caused by the written values, which no retry of the same batch can fix.
+     */
+    static boolean isPoison(Throwable error) {
+        return (error instanceof NonTransientDataAccessException && !(error instanceof NonTransientDataAccessResourceException))
+                || error instanceof R2dbcDataIntegrityViolationException
+                || error instanceof R2dbcBadGrammarException
+                || error instanceof IllegalArgumentException
+                || error instanceof SQLException sqlException && isDataError(sqlException.getSQLState());
+    }
+
+    /**
+     * SQLSTATE classes 22 (data exception), 23 (integrity constraint violation) and 42 (syntax error or access
+     * rule violation), as raised by the JDBC writer.
+     */
+    private static boolean isDataError(String sqlState) {
+        return sqlState != null && (sqlState.startsWith("22") || sqlState.startsWith("23") || sqlState.startsWith("42"));
+    }
+}
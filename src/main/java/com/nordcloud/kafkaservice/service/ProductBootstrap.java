@@ -0,0 +1,177 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.kafka.receiver.ReceiverOptions;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Rebuilds the product table from {@code product.topic} before the consumer starts streaming, with
+ * {@code consumer.bootstrap.mode}. Every partition is read from the beginning up to the end offset it had when the
+ * bootstrap started, with large polls and none of the per-record work of the streaming path. The last version of
+ * every uuid is kept in off-heap {@link ProductColumns}, bulk loaded with COPY once the end offsets are reached, or
+ * every {@code consumer.bootstrap.maxRows} distinct uuids to bound memory, which is safe as the records of a uuid
+ * share a partition and are loaded in order. The end offsets are then committed for the consumer group, so
+ * streaming resumes right after the snapshot.
+ * <p>
+ * Committing fails while other members of the group are consuming, streaming then replays from the offsets the
+ * group committed itself, which the idempotent upsert absorbs. Tombstones are skipped as in the streaming path, so
+ * are records that can not be decoded, which are logged rather than dead-lettered.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class ProductBootstrap {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final Map<String, Object> consumerProperties;
+    private final ProductRepository productRepository;
+    private final ConsumerMetrics consumerMetrics;
+    private final String topic;
+    private final BootstrapMode mode;
+    private final int maxRows;
+    private final int arenaBytes;
+
+    public ProductBootstrap(ReceiverOptions<String, ProductDto> kafkaReceiverOptions,
+                            ProductRepository productRepository,
+                            ConsumerMetrics consumerMetrics,
+                            @Value("${product.topic}") String topic,
+                            @Value("${consumer.bootstrap.mode:NONE}") BootstrapMode mode,
+                            @Value("${consumer.bootstrap.maxPollRecords:10000}") int maxPollRecords,
+                            @Value("${consumer.bootstrap.fetchMaxBytes:67108864}") int fetchMaxBytes,
+                            @Value("${consumer.bootstrap.maxRows:500000}") int maxRows,
+                            @Value("${consumer.columnar.arenaBytes:262144}") int arenaBytes) {
+        this.consumerProperties = new HashMap<>(kafkaReceiverOptions.consumerProperties());
+        this.consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        this.consumerProperties.put(ConsumerConfig.FETCH_MAX_BYTES_CONFIG, fetchMaxBytes);
+        this.consumerProperties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, fetchMaxBytes);
+        this.consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        this.productRepository = productRepository;
+        this.consumerMetrics = consumerMetrics;
+        this.topic = topic;
+        this.mode = mode;
+        this.maxRows = Math.max(1, maxRows);
+        this.arenaBytes = arenaBytes;
+    }
+
+    /**
+     * Bootstraps when the mode asks for it. A failed bootstrap is logged and streaming starts anyway.
+     */
+    public Mono<Void> bootstrap() {
+        Mono<Boolean> required = switch (mode) {
+            case NONE -> Mono.just(false);
+            case EMPTY -> productRepository.hasProducts().map(hasProducts -> !hasProducts);
+            case ALWAYS -> Mono.just(true);
+        };
+        return required
+                .filter(Boolean::booleanValue)
+                .flatMap(bootstrap -> Mono.fromRunnable(this::load)
+                        .subscribeOn(Schedulers.boundedElastic())) // polls and waits for the loads, blocking
+                .doOnError(error -> {
+                    consumerMetrics.error("bootstrap");
+                    log.error("Bootstrap failed, streaming from the committed offsets", error);
+                })
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try (KafkaConsumer<String, ProductDto> consumer = new KafkaConsumer<>(consumerProperties)) {
+            List<TopicPartition> partitions = consumer.partitionsFor(topic).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            log.info("Bootstrapping products from {} up to offsets {}", topic, endOffsets);
+
+            Set<TopicPartition> reading = new HashSet<>(partitions);
+            Predicate<TopicPartition> reachedEnd = partition -> {
+                boolean done = consumer.position(partition) >= endOffsets.get(partition);
+                if (done) {
+                    consumer.pause(List.of(partition));
+                }
+                return done;
+            };
+            reading.removeIf(reachedEnd);
+            ProductColumns columns = new ProductColumns(Math.min(maxRows, 65_536), arenaBytes);
+            long records = 0;
+            long loaded = 0;
+            while (!reading.isEmpty()) {
+                ConsumerRecords<String, ProductDto> polled = consumer.poll(POLL_TIMEOUT);
+                for (TopicPartition partition : polled.partitions()) {
+                    long endOffset = endOffsets.get(partition);
+                    for (ConsumerRecord<String, ProductDto> consumerRecord : polled.records(partition)) {
+                        if (consumerRecord.offset() >= endOffset) {
+                            break; // records after the end offset are left to streaming
+                        }
+                        ProductDto productDto = consumerRecord.value();
+                        IllegalArgumentException decodeError =
+                                ProductDtoDeserializer.decodeError(consumerRecord.headers());
+                        if (decodeError != null) {
+                            consumerMetrics.error("decoding");
+                            log.warn("Skipping record of {} at offset {}: {}", partition, consumerRecord.offset(),
+                                    decodeError.getMessage()); // streaming resumes after it, it is not dead-lettered
+                        } else if (productDto != null && productDto.getUuid() != null) {
+                            columns.add(productDto.getUuid(), productDto.getName(), productDto.getDescription(),
+                                    productDto.getPrice()); // the last version of a uuid wins
+                        }
+                        records++;
+                    }
+                }
+                if (columns.size() >= maxRows) {
+                    loaded += load(columns);
+                }
+                reading.removeIf(reachedEnd);
+            }
+            loaded += load(columns);
+            log.info("Bootstrapped {} products from {} records in {} ms", loaded, records,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+            commit(consumer, endOffsets);
+        }
+    }
+
+    private long load(ProductColumns columns) {
+        long rows = columns.size();
+        productRepository.upsertColumns(columns, BulkWriteMode.COPY).block();
+        columns.clear();
+        return rows;
+    }
+
+    private void commit(KafkaConsumer<String, ProductDto> consumer, Map<TopicPartition, Long> endOffsets) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        endOffsets.forEach((partition, offset) -> offsets.put(partition, new OffsetAndMetadata(offset)));
+        try {
+            consumer.commitSync(offsets);
+        } catch (KafkaException e) {
+            log.warn("Could not commit the bootstrap offsets, streaming replays from the group offsets. Details : {}",
+                    e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Read side cache of products by uuid, bounded in size and expiring after the TTL. Reads fill it, and the consumer
+ * writes saved batches through, drained spool entries included, so a product read right after it was consumed does
+ * not reach Postgres. Ids are
+ * only known for products read from the database and are cached as an id to uuid index. Hit, miss and eviction
+ * counts are published as the {@code cache.*} meters of the {@code product.uuid} and {@code product.id} caches.
+ */
+@Component
+public class ProductCache {
+
+    private final Cache<String, Product> productsByUuid;
+    private final Cache<Integer, String> uuidsById;
+    private final boolean enabled;
+
+    public ProductCache(MeterRegistry meterRegistry,
+                        @Value("${products.cache.maximumSize:100000}") long maximumSize,
+                        @Value("${products.cache.ttl:PT10M}") Duration ttl) {
+        this.enabled = maximumSize > 0;
+        this.productsByUuid = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.uuidsById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, productsByUuid, "product.uuid");
+        CaffeineCacheMetrics.monitor(meterRegistry, uuidsById, "product.id");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Product getByUuid(String uuid) {
+        return productsByUuid.getIfPresent(uuid);
+    }
+
+    public Product getById(int id) {
+        String uuid = uuidsById.getIfPresent(id);
+        return uuid != null ? productsByUuid.getIfPresent(uuid) : null;
+    }
+
+    public void put(Product product) {
+        productsByUuid.put(product.getUuid(), product);
+        if (product.getId() != null) {
+            uuidsById.put(product.getId(), product.getUuid());
+        }
+    }
+
+    public void invalidate(String uuid) {
+        productsByUuid.invalidate(uuid);
+    }
+
+    /**
+     * Write-through of a saved batch, columnar batches are materialized only while the cache is enabled.
+     */
+    public void putAll(ProductBatch batch) {
+        if (batch.getColumns() != null) {
+            putAll(batch.getColumns());
+        } else if (enabled) {
+            batch.getProducts().forEach(this::put);
+        }
+    }
+
+    /**
+     * Write-through of saved columns, such as drained spool entries.
+     */
+    public void putAll(ProductColumns columns) {
+        if (enabled) {
+            columns.toProducts().forEach(this::put);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of {@link ProductColumns}. Acquiring from an empty pool allocates a new batch, releasing into a
+ * full one drops it, so the pool never blocks a rail; it only has to cover the batches in flight at once.
+ */
+@Component
+@ConsumerRole
+public class ProductColumnsPool {
+
+    private final BlockingQueue<ProductColumns> idle;
+    private final int rowCapacity;
+    private final int arenaBytes;
+
+    public ProductColumnsPool(@Value("${consumer.columnar.poolSize:8}") int poolSize,
+                              @Value("${batch.maxSize:500}") int rowCapacity,
+                              @Value("${consumer.columnar.arenaBytes:262144}") int arenaBytes) {
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.rowCapacity = rowCapacity;
+        this.arenaBytes = arenaBytes;
+    }
+
+    public ProductColumns acquire() {
+        ProductColumns columns = idle.poll();
+        return columns != null ? columns : new ProductColumns(rowCapacity, arenaBytes);
+    }
+
+    public void release(ProductColumns columns) {
+        columns.clear();
+        idle.offer(columns);
+    }
+}
@@ -0,0 +1,53 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Read API over {@link ProductRepository}. Single product lookups are read through the {@link ProductCache},
+ * price range pages always go to Postgres.
+ */
+@Service
+public class ProductQueryService {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final ProductRepository productRepository;
+    private final ProductCache productCache;
+    private final ProductMapper productMapper;
+
+    public ProductQueryService(ProductRepository productRepository, ProductCache productCache, ProductMapper productMapper) {
+        this.productRepository = productRepository;
+        this.productCache = productCache;
+        this.productMapper = productMapper;
+    }
+
+    public Mono<ProductDto> findByUuid(String uuid) {
+        return Mono.defer(() -> readThrough(productCache.getByUuid(uuid), () -> productRepository.findByUuid(uuid)));
+    }
+
+    public Mono<ProductDto> findById(int id) {
+        return Mono.defer(() -> readThrough(productCache.getById(id), () -> productRepository.findById(id)));
+    }
+
+    public Flux<ProductDto> findByPriceRange(double minPrice, double maxPrice, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), MAX_PAGE_SIZE),
+                Sort.by("price", "id"));
+        return productRepository.findByPriceBetween(minPrice, maxPrice, pageRequest)
+                .map(productMapper::toProductDto);
+    }
+
+    private Mono<ProductDto> readThrough(Product cached, Supplier<Mono<Product>> load) {
+        Mono<Product> product = cached != null ? Mono.just(cached) : load.get().doOnNext(productCache::put);
+        return product.map(productMapper::toProductDto);
+    }
+}
@@ -0,0 +1,419 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.kafka.receiver.ReceiverOffset;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only spool on local disk for batches that can not be written while the database is unavailable, enabled
+ * with {@code consumer.spool.enabled=true}. Batches are appended to memory-mapped segment files of
+ * {@code consumer.spool.segmentBytes} in {@code consumer.spool.directory}, {@code consumer.spool.maxBytes} at most,
+ * and replayed in order by the {@link ProductSpoolDrainer}. An entry of a segment:
+ * <pre>
+ * int    body length, 0 where nothing was written yet
+ * int    CRC32C of the body
+ * int    state, PENDING or DRAINED
+ * int    products
+ * int    partitions, each the topic, int partition, long first and long last offset of the batch
+ * ...    products, each the uuid, name and description, byte price present and double price
+ * </pre>
+ * Strings are an int length, -1 for null, followed by the UTF-8 bytes. The length is written last, so an entry torn
+ * by a crash reads as the end of its segment. Drained entries are flagged in place, so a restart resumes with the
+ * first pending one, and segments are deleted once drained.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class ProductSpool {
+
+    static final String SEGMENT_SUFFIX = ".spool";
+
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int CRC_OFFSET = Integer.BYTES;
+    private static final int STATE_OFFSET = 2 * Integer.BYTES;
+    private static final int PENDING = 1;
+    private static final int DRAINED = 2;
+    private static final int NULL_LENGTH = -1;
+    private static final byte PRICE_PRESENT = 1;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean fsync;
+    private final ConsumerMetrics consumerMetrics;
+
+    private final Deque<Segment> segments = new ArrayDeque<>(); // oldest first, appends go to the last one
+    private long nextSequence;
+    private int drainPosition; // of the next pending entry in the oldest segment
+    private long pendingEntries;
+    private long pendingProducts;
+
+    public ProductSpool(ConsumerMetrics consumerMetrics,
+                        @Value("${consumer.spool.enabled:false}") boolean enabled,
+                        @Value("${consumer.spool.directory:spool}") String directory,
+                        @Value("${consumer.spool.segmentBytes:67108864}") int segmentBytes,
+                        @Value("${consumer.spool.maxBytes:1073741824}") long maxBytes,
+                        @Value("${consumer.spool.fsync:true}") boolean fsync) {
+        this.consumerMetrics = consumerMetrics;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = Math.max(HEADER_SIZE + 2 * Integer.BYTES, segmentBytes);
+        this.maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / this.segmentBytes));
+        this.fsync = fsync;
+        if (enabled) {
+            recover();
+            consumerMetrics.gauge("spool.batches", "Batches spooled to disk and not yet written to the database",
+                    this::getPendingEntries);
+            consumerMetrics.gauge("spool.products", "Products spooled to disk and not yet written to the database",
+                    this::getPendingProducts);
+            consumerMetrics.gauge("spool.bytes", "Disk taken by the spool segments", this::getDiskBytes);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * While entries are pending, later batches have to be spooled behind them, or a drained entry would overwrite
+     * newer versions of its products.
+     */
+    public synchronized boolean isEmpty() {
+        return pendingEntries == 0;
+    }
+
+    public synchronized long getPendingEntries() {
+        return pendingEntries;
+    }
+
+    public synchronized long getPendingProducts() {
+        return pendingProducts;
+    }
+
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.buffer.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends the products of the batch, durable on return with {@code consumer.spool.fsync=true}.
+     *
+     * @return false when the spool is disabled, or full, in which case the batch is not spooled
+     */
+    public boolean append(ProductBatch batch) {
+        if (!enabled) {
+            return false;
+        }
+        List<Product> products = batch.getColumns() != null ? batch.getColumns().toProducts() : batch.getProducts();
+        byte[] body = encode(products, batch.getFirstOffsets(), batch.getLastOffsets());
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        synchronized (this) {
+            int size = HEADER_SIZE + body.length;
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.writePosition + size > segment.buffer.capacity()) {
+                if (size > segmentBytes || (pendingEntries > 0 && segments.size() >= maxSegments)) {
+                    return false;
+                }
+                segment = roll();
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int position = segment.writePosition;
+            buffer.put(position + HEADER_SIZE, body);
+            buffer.putInt(position + CRC_OFFSET, (int) crc.getValue());
+            buffer.putInt(position + STATE_OFFSET, PENDING);
+            buffer.putInt(position, body.length); // last, a torn entry reads as the end of the segment
+            if (fsync) {
+                buffer.force(position, size);
+            }
+            segment.writePosition += size;
+            pendingEntries++;
+            pendingProducts += products.size();
+        }
+        consumerMetrics.spooled(products.size());
+        return true;
+    }
+
+    /**
+     * Reads pending entries, oldest first, until the columns hold {@code maxProducts} products. The entries stay
+     * pending until {@link #commit(int)}, only one drainer may poll at a time.
+     */
+    public synchronized Polled poll(ProductColumns columns, int maxProducts) {
+        columns.clear();
+        StringBuilder offsets = new StringBuilder();
+        int entries = 0;
+        Iterator<Segment> iterator = segments.iterator();
+        Segment segment = iterator.hasNext() ? iterator.next() : null;
+        int position = drainPosition;
+        while (segment != null && entries < pendingEntries && columns.size() < maxProducts) {
+            if (position >= segment.writePosition) {
+                segment = iterator.hasNext() ? iterator.next() : null;
+                position = 0;
+                continue;
+            }
+            int length = segment.buffer.getInt(position);
+            decode(segment.buffer.slice(position + HEADER_SIZE, length), columns, offsets);
+            position += HEADER_SIZE + length;
+            entries++;
+        }
+        return new Polled(entries, offsets.toString());
+    }
+
+    /**
+     * Flags the first {@code entries} pending entries as drained, once their products are written, and deletes the
+     * segments drained completely.
+     */
+    public synchronized void commit(int entries) {
+        long products = 0;
+        for (int drained = 0; drained < entries; ) {
+            Segment segment = segments.getFirst();
+            if (drainPosition >= segment.writePosition) {
+                if (segments.size() == 1) {
+                    break;
+                }
+                delete(segments.removeFirst());
+                drainPosition = 0;
+                continue;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int length = buffer.getInt(drainPosition);
+            buffer.putInt(drainPosition + STATE_OFFSET, DRAINED);
+            if (fsync) {
+                buffer.force(drainPosition + STATE_OFFSET, Integer.BYTES);
+            }
+            products += buffer.getInt(drainPosition + HEADER_SIZE);
+            drainPosition += HEADER_SIZE + length;
+            drained++;
+        }
+        while (segments.size() > 1 && drainPosition >= segments.getFirst().writePosition) {
+            delete(segments.removeFirst());
+            drainPosition = 0;
+        }
+        pendingEntries -= entries;
+        pendingProducts -= products;
+        consumerMetrics.drained((int) products);
+    }
+
+    /**
+     * Starts a new segment. Without pending entries the old segments are deleted first, they only hold drained ones.
+     */
+    private Segment roll() {
+        if (pendingEntries == 0) {
+            while (!segments.isEmpty()) {
+                delete(segments.removeFirst());
+            }
+            drainPosition = 0;
+        }
+        Segment segment = map(directory.resolve(String.format("%020d%s", nextSequence++, SEGMENT_SUFFIX)));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Maps the segments left by a previous run and finds the first pending entry.
+     */
+    private void recover() {
+        List<Path> files;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted() // zero padded sequence numbers
+                        .toList();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        boolean pendingFound = false;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            Segment segment = map(file);
+            int position = 0;
+            while (position + HEADER_SIZE <= segment.buffer.capacity()) {
+                int length = segment.buffer.getInt(position);
+                if (length <= 0 || position + HEADER_SIZE + length > segment.buffer.capacity()) {
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(segment.buffer.slice(position + HEADER_SIZE, length));
+                if ((int) crc.getValue() != segment.buffer.getInt(position + CRC_OFFSET)) {
+                    log.warn("Spool segment {} has a torn entry at {}, entries after it are ignored", file, position);
+                    break;
+                }
+                if (segment.buffer.getInt(position + STATE_OFFSET) == PENDING) {
+                    if (!pendingFound) {
+                        pendingFound = true;
+                        while (!segments.isEmpty()) {
+                            delete(segments.removeFirst()); // drained before the first pending entry
+                        }
+                        drainPosition = position;
+                    }
+                    pendingEntries++;
+                    pendingProducts += segment.buffer.getInt(position + HEADER_SIZE);
+                }
+                position += HEADER_SIZE + length;
+            }
+            segment.writePosition = position;
+            segments.addLast(segment);
+        }
+        if (!pendingFound) {
+            while (!segments.isEmpty()) {
+                delete(segments.removeFirst()); // drained completely, appends start a new segment
+            }
+        } else {
+            log.info("Recovered {} spooled batches of {} products from {}", pendingEntries, pendingProducts, directory);
+        }
+    }
+
+    private Segment map(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), segmentBytes); // a segment keeps the size it was created with
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size)); // valid after close
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The mapping of a deleted segment is released when its buffer is collected, the file is gone right away.
+     */
+    private static void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Could not delete spool segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private static byte[] encode(List<Product> products, Map<TopicPartition, Long> firstOffsets,
+                                 Map<TopicPartition, ReceiverOffset> lastOffsets) {
+        List<byte[]> strings = new ArrayList<>(products.size() * 3 + lastOffsets.size());
+        int size = 2 * Integer.BYTES;
+        for (TopicPartition topicPartition : lastOffsets.keySet()) {
+            byte[] topic = utf8(topicPartition.topic());
+            strings.add(topic);
+            size += length(topic) + Integer.BYTES + 2 * Long.BYTES;
+        }
+        for (Product product : products) {
+            byte[] uuid = utf8(product.getUuid());
+            byte[] name = utf8(product.getName());
+            byte[] description = utf8(product.getDescription());
+            strings.add(uuid);
+            strings.add(name);
+            strings.add(description);
+            size += length(uuid) + length(name) + length(description) + 1 + Double.BYTES;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(products.size()).putInt(lastOffsets.size());
+        Iterator<byte[]> string = strings.iterator();
+        lastOffsets.forEach((topicPartition, last) -> {
+            putString(buffer, string.next());
+            buffer.putInt(topicPartition.partition())
+                    .putLong(firstOffsets.getOrDefault(topicPartition, last.offset()))
+                    .putLong(last.offset());
+        });
+        for (Product product : products) {
+            putString(buffer, string.next());
+            putString(buffer, string.next());
+            putString(buffer, string.next());
+            buffer.put(product.getPrice() == null ? 0 : PRICE_PRESENT)
+                    .putDouble(product.getPrice() == null ? 0D : product.getPrice());
+        }
+        return buffer.array();
+    }
+
+    private static void decode(ByteBuffer body, ProductColumns columns, StringBuilder offsets) {
+        int products = body.getInt();
+        int partitions = body.getInt();
+        for (int partition = 0; partition < partitions; partition++) {
+            if (offsets.length() > 0) {
+                offsets.append(", ");
+            }
+            offsets.append(getString(body)).append('-').append(body.getInt())
+                    .append('[').append(body.getLong()).append("..").append(body.getLong()).append(']');
+        }
+        for (int product = 0; product < products; product++) {
+            String uuid = getString(body);
+            String name = getString(body);
+            String description = getString(body);
+            boolean pricePresent = body.get() == PRICE_PRESENT;
+            double price = body.getDouble();
+            columns.add(uuid, name, description, pricePresent ? price : null); // later entries of a uuid win
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Entries read by {@link #poll(ProductColumns, int)}, with the offset ranges of their batches.
+     */
+    public record Polled(int entries, String offsets) {
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
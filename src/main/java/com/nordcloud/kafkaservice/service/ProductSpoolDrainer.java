@@ -0,0 +1,121 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
+import com.nordcloud.kafkaservice.repository.ProductBulkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Replays the {@link ProductSpool} into the database every {@code consumer.spool.drainInterval}, oldest entries
+ * first, until it is empty or a write fails, which is tried again on the next tick. Entries are merged into one
+ * columnar batch of up to {@code consumer.spool.drainBatchSize} products, the last version of a uuid winning, and
+ * flagged drained only once written. Written products go through to the {@link ProductCache}, which held their
+ * versions from before the outage. A product the database rejects is logged with the offsets of its entries,
+ * dropped and evicted from the cache, the original record is no longer at hand to be dead-lettered.
+ */
+@Component
+@Slf4j
+@ConsumerRole
+public class ProductSpoolDrainer {
+
+    private final ProductSpool productSpool;
+    private final ProductBulkRepository productRepository;
+    private final ProductCache productCache;
+    private final ConsumerMetrics consumerMetrics;
+    private final BulkWriteMode writeMode;
+    private final Duration interval;
+    private final int batchSize;
+    private final ProductColumns columns; // only touched by the sequential drain
+
+    public ProductSpoolDrainer(ProductSpool productSpool,
+                               ProductBulkRepository productRepository,
+                               ProductCache productCache,
+                               ConsumerMetrics consumerMetrics,
+                               @Value("${persistence.writeMode:PER_ROW}") BulkWriteMode writeMode,
+                               @Value("${consumer.spool.drainInterval:PT1S}") Duration interval,
+                               @Value("${consumer.spool.drainBatchSize:5000}") int batchSize,
+                               @Value("${consumer.columnar.arenaBytes:262144}") int arenaBytes) {
+        this.productSpool = productSpool;
+        this.productRepository = productRepository;
+        this.productCache = productCache;
+        this.consumerMetrics = consumerMetrics;
+        this.writeMode = writeMode;
+        this.interval = interval;
+        this.batchSize = Math.max(1, batchSize);
+        this.columns = new ProductColumns(this.batchSize, arenaBytes);
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public Disposable schedule() {
+        if (!productSpool.isEnabled()) {
+            return Flux.never().subscribe();
+        }
+        return Flux.interval(interval)
+                .onBackpressureDrop() // a long drain skips the ticks it overlaps
+                .concatMap(tick -> drain()
+                        .onErrorResume(error -> {
+                            log.debug("Product spool not drained, will retry: {}", error.getMessage()); // database still down
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    /**
+     * @return number of products written from the spool
+     */
+    public Mono<Long> drain() {
+        return Mono.defer(this::drainBatch)
+                .repeat()
+                .takeWhile(products -> products > 0)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> drainBatch() {
+        return Mono.fromCallable(() -> productSpool.poll(columns, batchSize))
+                .subscribeOn(Schedulers.boundedElastic()) // reading the mapped segments may fault pages in
+                .flatMap(polled -> {
+                    if (polled.entries() == 0) {
+                        return Mono.just(0L);
+                    }
+                    long products = columns.size();
+                    return write(polled)
+                            .then(Mono.fromRunnable(() -> productSpool.commit(polled.entries())))
+                            .doOnSuccess(ignored -> log.info("Drained {} spooled batches, {} products, of {}",
+                                    polled.entries(), products, polled.offsets()))
+                            .thenReturn(products);
+                });
+    }
+
+    private Mono<Long> write(ProductSpool.Polled polled) {
+        return productRepository.upsertColumns(columns, writeMode)
+                .doOnSuccess(rows -> productCache.putAll(columns)) // write-through, as for consumed batches
+                .onErrorResume(ProductBatchWriter::isPoison, error -> {
+                    log.error("Spooled products of {} rejected, writing them one by one. Details : {}",
+                            polled.offsets(), error.getMessage());
+                    return Flux.fromIterable(columns.toProducts())
+                            .concatMap(product -> productRepository.upsertAll(List.of(product), writeMode)
+                                    .doOnSuccess(rows -> productCache.put(product))
+                                    .onErrorResume(ProductBatchWriter::isPoison, productError -> {
+                                        consumerMetrics.error("spool");
+                                        productCache.invalidate(product.getUuid());
+                                        log.error("Dropping spooled product {} of {}. Details : {}", product.getUuid(),
+                                                polled.offsets(), productError.getMessage());
+                                        return Mono.just(0L);
+                                    }))
+                            .reduce(0L, Long::sum);
+                });
+    }
+}
@@ -0,0 +1,43 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.configuration.ConsumerRole;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU of the last products written per uuid. A record whose product equals the one already written is a
+ * replay (redelivery or rebalance) and can be dropped without a database round trip; changed products pass through.
+ */
+@Component
+@ConsumerRole
+public class RecentProductCache {
+
+    private final Map<String, Product> products;
+
+    public RecentProductCache(@Value("${consumer.recentUuidCacheSize:10000}") int capacity) {
+        this.products = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Product> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized boolean isReplay(Product product) {
+        return product.equals(products.get(product.getUuid()));
+    }
+
+    /**
+     * To be called only once the products are durable, otherwise a failed write would hide its own redelivery.
+     */
+    public synchronized void remember(List<Product> written) {
+        for (Product product : written) {
+            products.put(product.getUuid(), product);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+-- product partitioned by a bucket of the uuid, computed by the application (ProductPartitions) which creates the
+-- partition of every bucket on first use and writes each batch straight into the partitions of its buckets
+CREATE TABLE IF NOT EXISTS product (
+    id SERIAL NOT NULL,
+    uuid VARCHAR(255) NOT NULL,
+    p_name VARCHAR(255) NOT NULL,
+    description VARCHAR(255) NOT NULL,
+    price DOUBLE PRECISION NOT NULL,
+    ingested_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    bucket SMALLINT NOT NULL
+) PARTITION BY LIST (bucket);
+
+-- every partition has a unique index on uuid, a bucket holds all the records of a uuid
+CREATE INDEX IF NOT EXISTS product_id_idx ON product (id);
+
+-- paged listing by price range, ordered by price then id
+CREATE INDEX IF NOT EXISTS product_price_id_idx ON product (price, id);
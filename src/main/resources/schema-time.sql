@@ -0,0 +1,19 @@
+-- product partitioned by day of ingest time. The application (ProductPartitions) creates the partition of a day on
+-- first use and a day ahead, writes each batch straight into the partition of its day and drops the partitions
+-- older than the retention
+CREATE TABLE IF NOT EXISTS product (
+    id SERIAL NOT NULL,
+    uuid VARCHAR(255) NOT NULL,
+    p_name VARCHAR(255) NOT NULL,
+    description VARCHAR(255) NOT NULL,
+    price DOUBLE PRECISION NOT NULL,
+    ingested_at TIMESTAMPTZ NOT NULL DEFAULT now()
+) PARTITION BY RANGE (ingested_at);
+
+-- every partition has a unique index on uuid, a write deletes the rows of its uuids in the partitions of earlier days
+-- so a product keeps one row, in the partition of the day it was last written
+CREATE INDEX IF NOT EXISTS product_id_idx ON product (id);
+CREATE INDEX IF NOT EXISTS product_uuid_ingested_at_idx ON product (uuid, ingested_at);
+
+-- paged listing by price range, ordered by price then id
+CREATE INDEX IF NOT EXISTS product_price_id_idx ON product (price, id);
@@ -3,5 +3,20 @@ CREATE TABLE IF NOT EXISTS product (
     uuid VARCHAR(255) NOT NULL,
     p_name VARCHAR(255) NOT NULL,
     description VARCHAR(255) NOT NULL,
-    price DOUBLE PRECISION NOT NULL
+    price DOUBLE PRECISION NOT NULL,
+    ingested_at TIMESTAMPTZ NOT NULL DEFAULT now()
 );
+
+-- tables created before the ingest timestamp existed
+ALTER TABLE product ADD COLUMN IF NOT EXISTS ingested_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+-- tables written before the upsert hold a row per redelivered record: until the unique index exists, only the last
+-- written row (highest id) of every uuid is kept
+DELETE FROM product older USING product newer
+WHERE older.uuid = newer.uuid AND older.id < newer.id AND to_regclass('product_uuid_uidx') IS NULL;
+
+-- uuid is the natural key of a product, redelivered records are upserted on it
+CREATE UNIQUE INDEX IF NOT EXISTS product_uuid_uidx ON product (uuid);
+
+-- paged listing by price range, ordered by price then id
+CREATE INDEX IF NOT EXISTS product_price_id_idx ON product (price, id);
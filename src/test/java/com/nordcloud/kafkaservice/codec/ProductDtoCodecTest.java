@@ -0,0 +1,124 @@
+package com.nordcloud.kafkaservice.codec;
+
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class ProductDtoCodecTest {
+
+    private static final String TEST_TOPIC = "test_topic";
+    private static final ProductDto PRODUCT_DTO = ProductDto.builder()
+            .uuid("1-2-3-4").name("Test Product").description("Descriere cu diacritice: ăîșț").price(10D).build();
+
+    @Test
+    void givenBinaryCodec_whenRoundTripping_thenProductIsEqualAndSmallerThanJson() {
+        // given
+        RecordHeaders headers = new RecordHeaders();
+
+        // when
+        byte[] binary = serializer(ProductCodec.BINARY).serialize(TEST_TOPIC, headers, PRODUCT_DTO);
+        byte[] json = serializer(ProductCodec.JSON).serialize(TEST_TOPIC, new RecordHeaders(), PRODUCT_DTO);
+
+        // then
+        Assertions.assertEquals(ProductCodec.BINARY, ProductCodec.fromHeaders(headers));
+        Assertions.assertEquals(PRODUCT_DTO, deserializer().deserialize(TEST_TOPIC, headers, binary));
+        Assertions.assertTrue(binary.length < json.length);
+    }
+
+    @Test
+    void givenJsonRecordWithoutCodecHeader_whenDeserializing_thenFallsBackToJson() {
+        // given
+        byte[] json = serializer(ProductCodec.JSON).serialize(TEST_TOPIC, PRODUCT_DTO);
+
+        // when then
+        Assertions.assertEquals(PRODUCT_DTO, deserializer().deserialize(TEST_TOPIC, new RecordHeaders(), json));
+    }
+
+    @Test
+    void givenNullFields_whenRoundTrippingBinary_thenNullsArePreserved() {
+        // given
+        ProductDto productDto = ProductDto.builder().uuid("1").build();
+
+        // when then
+        Assertions.assertEquals(productDto, ProductDtoBinaryCodec.decode(ProductDtoBinaryCodec.encode(productDto)));
+    }
+
+    @Test
+    void givenSendTime_whenRoundTrippingBinary_thenSendTimeIsPreservedAndVersionOneIsKeptWithout() {
+        // given
+        ProductDto stamped = ProductDto.builder().uuid("1").price(10D).sentAt(1_700_000_000_000_000L).build();
+
+        // when
+        byte[] binary = ProductDtoBinaryCodec.encode(stamped);
+
+        // then
+        Assertions.assertEquals(ProductDtoBinaryCodec.VERSION_SENT_AT, binary[0]);
+        Assertions.assertEquals(stamped, ProductDtoBinaryCodec.decode(binary));
+        Assertions.assertEquals(ProductDtoBinaryCodec.VERSION, ProductDtoBinaryCodec.encode(PRODUCT_DTO)[0]);
+    }
+
+    @Test
+    void givenSendTime_whenSerializingBinary_thenRecordIsStampedWithTheSecondVersion() {
+        // given
+        ProductDto stamped = ProductDto.builder().uuid("1").price(10D).sentAt(1_700_000_000_000_000L).build();
+        RecordHeaders stampedHeaders = new RecordHeaders();
+        RecordHeaders headers = new RecordHeaders();
+
+        // when
+        byte[] binary = serializer(ProductCodec.BINARY).serialize(TEST_TOPIC, stampedHeaders, stamped);
+        serializer(ProductCodec.BINARY).serialize(TEST_TOPIC, headers, PRODUCT_DTO);
+
+        // then
+        Assertions.assertEquals(ProductCodec.BINARY_V2, ProductCodec.fromHeaders(stampedHeaders));
+        Assertions.assertEquals(ProductCodec.BINARY, ProductCodec.fromHeaders(headers));
+        Assertions.assertEquals(stamped, deserializer().deserialize(TEST_TOPIC, stampedHeaders, binary));
+    }
+
+    @Test
+    void givenCorruptBinaryPayload_whenDeserializing_thenValueIsNullAndFailureIsFlaggedInHeaders() {
+        // given
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(ProductCodec.HEADER, ProductCodec.BINARY.headerBytes());
+        byte[] corrupt = {ProductDtoBinaryCodec.VERSION, 1};
+
+        // when
+        ProductDto productDto = deserializer().deserialize(TEST_TOPIC, headers, corrupt);
+
+        // then
+        Assertions.assertNull(productDto);
+        Assertions.assertNotNull(ProductDtoDeserializer.decodeError(headers));
+        Assertions.assertArrayEquals(corrupt, headers.lastHeader(ProductDtoDeserializer.VALUE_HEADER).value());
+    }
+
+    @Test
+    void givenUnknownCodecHeader_whenDeserializing_thenValueIsNullAndFailureNamesTheHeader() {
+        // given
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(ProductCodec.HEADER, "avro".getBytes(StandardCharsets.UTF_8));
+
+        // when
+        ProductDto productDto = deserializer().deserialize(TEST_TOPIC, headers, new byte[]{1});
+
+        // then
+        Assertions.assertNull(productDto);
+        Assertions.assertTrue(ProductDtoDeserializer.decodeError(headers).getMessage().contains("avro"));
+    }
+
+    private ProductDtoSerializer serializer(ProductCodec codec) {
+        ProductDtoSerializer serializer = new ProductDtoSerializer();
+        serializer.configure(Map.of(ProductCodec.CONFIG, codec.name()), false);
+        return serializer;
+    }
+
+    private ProductDtoDeserializer deserializer() {
+        ProductDtoDeserializer deserializer = new ProductDtoDeserializer();
+        deserializer.configure(Map.of("spring.json.use.type.headers", "false",
+                "spring.json.value.default.type", ProductDto.class.getName(),
+                "spring.json.trusted.packages", "*"), false);
+        return deserializer;
+    }
+}
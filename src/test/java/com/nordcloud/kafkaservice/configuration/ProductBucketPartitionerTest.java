@@ -0,0 +1,35 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import com.nordcloud.kafkaservice.repository.ProductPartitions;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+public class ProductBucketPartitionerTest {
+
+    private static final String TEST_TOPIC = "test_topic";
+    private static final int PARTITIONS = 4;
+
+    @Test
+    void givenUuidKey_whenPartitioning_thenRecordGoesToThePartitionOfItsDatabaseBucket() {
+        // given
+        ProductBucketPartitioner partitioner = new ProductBucketPartitioner();
+        Cluster cluster = new Cluster("test", List.of(), IntStream.range(0, PARTITIONS)
+                .mapToObj(partition -> new PartitionInfo(TEST_TOPIC, partition, null, null, null))
+                .toList(), Set.of(), Set.of());
+
+        // when then
+        for (int i = 0; i < 100; i++) {
+            String uuid = UUID.randomUUID().toString();
+            int partition = partitioner.partition(TEST_TOPIC, uuid, null, null, null, cluster);
+            Assertions.assertEquals(ProductPartitions.bucket(uuid, PARTITIONS), partition);
+            Assertions.assertEquals(partition, partitioner.partition(TEST_TOPIC, uuid, null, null, null, cluster));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import com.nordcloud.kafkaservice.metrics.ProducerMetrics;
+import com.nordcloud.kafkaservice.service.ConsumerLogging;
+import com.nordcloud.kafkaservice.service.RecentProductCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+public class RolesTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+            .withUserConfiguration(ProducerMetrics.class, RecentProductCache.class, ConsumerLogging.class);
+
+    @Test
+    void givenConsumerProfile_whenStarting_thenProducerComponentsAreLeftOut() {
+        // given when then
+        contextRunner.withPropertyValues("spring.profiles.active=" + ConsumerRole.PROFILE)
+                .run(context -> {
+                    Assertions.assertThat(context).doesNotHaveBean(ProducerMetrics.class);
+                    Assertions.assertThat(context).hasSingleBean(RecentProductCache.class);
+                    Assertions.assertThat(context).hasSingleBean(ConsumerLogging.class);
+                });
+    }
+
+    @Test
+    void givenProducerProfile_whenStarting_thenConsumerComponentsAreLeftOut() {
+        // given when then
+        contextRunner.withPropertyValues("spring.profiles.active=" + ProducerRole.PROFILE)
+                .run(context -> {
+                    Assertions.assertThat(context).hasSingleBean(ProducerMetrics.class);
+                    Assertions.assertThat(context).doesNotHaveBean(RecentProductCache.class);
+                    Assertions.assertThat(context).doesNotHaveBean(ConsumerLogging.class);
+                });
+    }
+
+    @Test
+    void givenNoRoleProfile_whenStarting_thenBothSidesAreCreated() {
+        // given when then
+        contextRunner.run(context -> {
+            Assertions.assertThat(context).hasSingleBean(ProducerMetrics.class);
+            Assertions.assertThat(context).hasSingleBean(RecentProductCache.class);
+            Assertions.assertThat(context).hasSingleBean(ConsumerLogging.class);
+        });
+    }
+}
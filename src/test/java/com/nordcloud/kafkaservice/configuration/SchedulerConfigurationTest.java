@@ -0,0 +1,69 @@
+package com.nordcloud.kafkaservice.configuration;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class SchedulerConfigurationTest {
+
+    @ParameterizedTest
+    @EnumSource(PersistenceSchedulerType.class)
+    void givenSchedulerType_whenRunningBlockingWork_thenItRunsOffTheCallerThread(PersistenceSchedulerType type) {
+        // given
+        Scheduler scheduler = SchedulerConfiguration.createScheduler(type, 2);
+        Thread caller = Thread.currentThread();
+
+        try {
+            // when
+            Thread worker = Mono.fromCallable(Thread::currentThread)
+                    .subscribeOn(scheduler)
+                    .block(Duration.ofSeconds(5));
+
+            // then
+            Assertions.assertNotSame(caller, worker);
+        } finally {
+            scheduler.dispose();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PersistenceSchedulerType.class, names = {"BOUNDED_ELASTIC", "PARALLEL"})
+    void givenParallelism_whenRunningConcurrentWork_thenAtMostThatManyThreadsAreUsed(PersistenceSchedulerType type) {
+        // given
+        Scheduler scheduler = SchedulerConfiguration.createScheduler(type, 2);
+
+        try {
+            // when
+            Set<Thread> workers = Flux.range(0, 8)
+                    .flatMap(task -> Mono.fromCallable(() -> {
+                        Thread.sleep(20);
+                        return Thread.currentThread();
+                    }).subscribeOn(scheduler))
+                    .collect(Collectors.toSet())
+                    .block(Duration.ofSeconds(5));
+
+            // then
+            Assertions.assertTrue(workers.size() <= 2);
+        } finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void givenJava21_whenLookingUpVirtualThreads_thenExecutorIsAvailable() {
+        // given
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21);
+
+        // when then
+        Assertions.assertTrue(SchedulerConfiguration.virtualThreadExecutor().isPresent());
+    }
+}
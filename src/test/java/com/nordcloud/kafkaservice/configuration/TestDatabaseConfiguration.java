@@ -1,7 +1,9 @@
 package com.nordcloud.kafkaservice.configuration;
 
+import com.nordcloud.kafkaservice.repository.ProductPartitioning;
 import io.r2dbc.spi.ConnectionFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -12,11 +14,12 @@ import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
 public class TestDatabaseConfiguration {
 
     @Bean
-    ConnectionFactoryInitializer initializer(@Qualifier("connectionFactory") ConnectionFactory connectionFactory) {
+    ConnectionFactoryInitializer initializer(@Qualifier("connectionFactory") ConnectionFactory connectionFactory,
+                                             @Value("${persistence.partitioning:NONE}") ProductPartitioning partitioning) {
         ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
         initializer.setConnectionFactory(connectionFactory);
         ResourceDatabasePopulator resource =
-                new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+                new ResourceDatabasePopulator(new ClassPathResource(partitioning.getSchema()));
         initializer.setDatabasePopulator(resource);
 
         return initializer;
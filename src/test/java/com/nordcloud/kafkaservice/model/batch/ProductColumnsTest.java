@@ -0,0 +1,69 @@
+package com.nordcloud.kafkaservice.model.batch;
+
+import com.nordcloud.kafkaservice.model.entity.Product;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ProductColumnsTest {
+
+    private final ProductColumns columns = new ProductColumns(2, 64);
+
+    @Test
+    void givenRepeatedUuid_whenAdding_thenLastProductWinsInTheFirstRow() {
+        // given
+        columns.add("a", "first", "description", 1D);
+        columns.add("b", "other", null, null);
+
+        // when
+        int row = columns.add("a", "second", "description", 2D);
+
+        // then
+        Assertions.assertEquals(0, row);
+        Assertions.assertEquals(List.of(new Product(null, "a", "second", "description", 2D),
+                new Product(null, "b", "other", null, null)), columns.toProducts());
+    }
+
+    @Test
+    void givenMoreProductsThanCapacity_whenAdding_thenColumnsGrowAndKeepEveryProduct() {
+        // given when
+        for (int i = 0; i < 100; i++) {
+            columns.add("uuid-" + i, "name-ä€😀-" + i, "description-" + i, (double) i);
+        }
+
+        // then
+        Assertions.assertEquals(100, columns.size());
+        Assertions.assertEquals("name-ä€😀-42", columns.getString(42, ProductColumns.NAME_COLUMN));
+        Assertions.assertEquals(99D, columns.getPrice(99));
+    }
+
+    @Test
+    void givenSpecialCharacters_whenRenderingCopyPayload_thenValuesAreEscaped() {
+        // given
+        columns.add("a", "Tab\tand\\backslash", null, null);
+        columns.add("b", "line\nbreak", "€", 1.5D);
+
+        // when
+        ByteBuffer payload = columns.copyPayload();
+
+        // then
+        Assertions.assertEquals("a\tTab\\tand\\\\backslash\t\\N\t\\N\nb\tline\\nbreak\t€\t1.5\n",
+                StandardCharsets.UTF_8.decode(payload).toString());
+    }
+
+    @Test
+    void givenClearedColumns_whenAddingKnownUuid_thenNewRowIsCreated() {
+        // given
+        columns.add("a", "first", null, 1D);
+
+        // when
+        columns.clear();
+        columns.add("a", "second", null, 2D);
+
+        // then
+        Assertions.assertEquals(List.of(new Product(null, "a", "second", null, 2D)), columns.toProducts());
+    }
+}
@@ -0,0 +1,108 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.configuration.PersistenceSchedulerType;
+import com.nordcloud.kafkaservice.configuration.SchedulerConfiguration;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.scheduler.Scheduler;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.util.List;
+import java.util.UUID;
+
+public class JdbcProductRepositoryTest {
+
+    private static final String JDBC_URL = "jdbc:tc:postgresql:15-alpine:///testdb?TC_INITSCRIPT=schema.sql"
+            + "&reWriteBatchedInserts=true";
+
+    private static HikariDataSource dataSource;
+    private static Scheduler scheduler;
+
+    private JdbcProductRepository repository;
+
+    @BeforeAll
+    static void setUpDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setDriverClassName("org.testcontainers.jdbc.ContainerDatabaseDriver");
+        config.setJdbcUrl(JDBC_URL);
+        config.setMaximumPoolSize(2);
+        dataSource = new HikariDataSource(config);
+        scheduler = SchedulerConfiguration.createScheduler(PersistenceSchedulerType.VIRTUAL, 0);
+    }
+
+    @AfterAll
+    static void tearDownDataSource() {
+        scheduler.dispose();
+        dataSource.close();
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM product");
+        }
+        repository = new JdbcProductRepository(dataSource, scheduler, new ProductPartitions(
+                Mockito.mock(ConnectionFactory.class), ProductPartitioning.NONE, 1, Clock.systemUTC())); // flat table, no DDL
+    }
+
+    @Test
+    void givenRedeliveredProduct_whenWritingBatch_thenRowIsUpdatedInPlace() throws SQLException {
+        // given
+        Product product = new Product(null, UUID.randomUUID().toString(), "Prod", "Description", 1D);
+        repository.upsertAll(List.of(product), BulkWriteMode.UNNEST).block();
+
+        // when
+        product.setPrice(2D);
+        repository.upsertAll(List.of(product), BulkWriteMode.UNNEST).block();
+
+        // then
+        Assertions.assertEquals(1L, count());
+        Assertions.assertEquals(2D, price(product.getUuid()));
+    }
+
+    @Test
+    void givenColumnarBatch_whenWritingBatch_thenAllRowsAreInserted() throws SQLException {
+        // given
+        ProductColumns columns = new ProductColumns(100, 1024);
+        for (int i = 0; i < 100; i++) {
+            String uuid = UUID.randomUUID().toString();
+            columns.add(uuid, "Prod-" + uuid, "Tab\tand\\backslash " + uuid, (double) i);
+        }
+
+        // when
+        Long rows = repository.upsertColumns(columns, BulkWriteMode.UNNEST).block();
+
+        // then
+        Assertions.assertEquals(100L, rows);
+        Assertions.assertEquals(100L, count());
+    }
+
+    private long count() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM product")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private double price(String uuid) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT price FROM product WHERE uuid = '" + uuid + "'")) {
+            resultSet.next();
+            return resultSet.getDouble(1);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Checks every write mode end to end. Their throughput is compared by {@code ProductWriteBenchmark} in
+ * {@code src/jmh}.
+ */
+@Testcontainers
+@ExtendWith(SpringExtension.class)
+@DataR2dbcTest
+@Import(ProductPartitions.class)
+@ActiveProfiles("test")
+public class ProductBulkRepositoryTest {
+
+    private static final int BATCH_SIZE = 2_000;
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll().block();
+    }
+
+    @ParameterizedTest
+    @EnumSource(BulkWriteMode.class)
+    void givenBatchOfProducts_whenWritingWithMode_thenAllRowsAreInserted(BulkWriteMode mode) {
+        // given
+        List<List<Product>> batches = new ArrayList<>(ROUNDS);
+        for (int round = 0; round < ROUNDS; round++) {
+            batches.add(buildProducts(BATCH_SIZE));
+        }
+
+        // when
+        for (List<Product> batch : batches) {
+            repository.upsertAll(batch, mode).block();
+        }
+
+        // then
+        Assertions.assertEquals((long) BATCH_SIZE * ROUNDS, repository.count().block());
+    }
+
+    @ParameterizedTest
+    @EnumSource(BulkWriteMode.class)
+    void givenRedeliveredProduct_whenWritingWithMode_thenRowIsUpdatedInPlace(BulkWriteMode mode) {
+        // given
+        Product product = new Product(null, UUID.randomUUID().toString(), "Prod", "Description", 1D);
+        repository.upsertAll(List.of(product), mode).block();
+
+        // when
+        product.setPrice(2D);
+        repository.upsertAll(List.of(product), mode).block();
+
+        // then
+        Assertions.assertEquals(1L, repository.count().block());
+        Assertions.assertEquals(2D, repository.findAll().blockFirst().getPrice());
+    }
+
+    @ParameterizedTest
+    @EnumSource(BulkWriteMode.class)
+    void givenColumnarBatch_whenWritingWithMode_thenAllRowsAreInserted(BulkWriteMode mode) {
+        // given
+        ProductColumns columns = new ProductColumns(BATCH_SIZE, 1024);
+        for (Product product : buildProducts(BATCH_SIZE)) {
+            columns.add(product.getUuid(), product.getName(), product.getDescription(), product.getPrice());
+        }
+
+        // when
+        long rows = repository.upsertColumns(columns, mode).block();
+
+        // then
+        Assertions.assertEquals(BATCH_SIZE, rows);
+        Assertions.assertEquals((long) BATCH_SIZE, repository.count().block());
+    }
+
+    private List<Product> buildProducts(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String uuid = UUID.randomUUID().toString();
+            products.add(new Product(null, uuid, "Prod-" + uuid, "Tab\tand\\backslash " + uuid, (double) i));
+        }
+        return products;
+    }
+}
@@ -0,0 +1,76 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.entity.Product;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class ProductPartitionsTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-31T23:59:59Z");
+
+    @Test
+    void givenHashPartitioning_whenRoutingBatch_thenEveryProductGoesToTheTableOfItsBucket() {
+        // given
+        ProductPartitions partitions = buildPartitions(ProductPartitioning.HASH, 4);
+        List<Product> products = buildProducts(100);
+
+        // when
+        Map<String, List<Product>> routed = partitions.route(products, NOW);
+
+        // then
+        Assertions.assertEquals(products.size(), routed.values().stream().mapToInt(List::size).sum());
+        routed.forEach((table, partition) -> partition.forEach(product -> Assertions.assertEquals(
+                ProductPartitions.bucketTable(partitions.bucket(product.getUuid())), table)));
+        Assertions.assertTrue(routed.keySet().stream().allMatch(table -> table.matches("product_b[0-3]")));
+    }
+
+    @Test
+    void givenTimePartitioning_whenRoutingBatch_thenWholeBatchGoesToTheTableOfTheUtcDay() {
+        // given
+        ProductPartitions partitions = buildPartitions(ProductPartitioning.TIME, 4);
+
+        // when
+        Map<String, List<Product>> routed = partitions.route(buildProducts(10), NOW);
+
+        // then
+        Assertions.assertEquals(List.of("product_20240131"), List.copyOf(routed.keySet()));
+        Assertions.assertEquals(10, routed.get("product_20240131").size());
+    }
+
+    @Test
+    void givenNoPartitioning_whenRoutingBatch_thenFlatTableIsWrittenWithoutDdl() {
+        // given
+        ProductPartitions partitions = buildPartitions(ProductPartitioning.NONE, 4);
+
+        // when
+        Map<String, List<Product>> routed = partitions.route(buildProducts(10), NOW);
+
+        // then
+        Assertions.assertEquals(List.of(ProductPartitions.TABLE), List.copyOf(routed.keySet()));
+        Assertions.assertNull(partitions.ensure(ProductPartitions.TABLE).block());
+    }
+
+    private ProductPartitions buildPartitions(ProductPartitioning partitioning, int buckets) {
+        return new ProductPartitions(Mockito.mock(ConnectionFactory.class), partitioning, buckets,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private List<Product> buildProducts(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String uuid = UUID.randomUUID().toString();
+            products.add(new Product(null, uuid, "Prod-" + uuid, "Prod-" + uuid, (double) i));
+        }
+        return products;
+    }
+}
@@ -2,14 +2,23 @@ package com.nordcloud.kafkaservice.repository;
 
 
 import com.nordcloud.kafkaservice.model.entity.Product;
+import io.r2dbc.spi.ConnectionFactory;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -17,6 +26,7 @@ import reactor.test.StepVerifier;
 @Testcontainers
 @ExtendWith(SpringExtension.class)
 @DataR2dbcTest
+@Import(ProductPartitions.class)
 @ActiveProfiles("test")
 public class ProductRepositoryTest {
 
@@ -28,6 +38,17 @@ public class ProductRepositoryTest {
     @Autowired
     private ProductRepository repository;
 
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll().block();
+    }
+
     @Test
     void givenProduct_whenSaveAndFind_thenReturnSavedProduct() {
         // given
@@ -49,6 +70,73 @@ public class ProductRepositoryTest {
                 .verify();
     }
 
+    @Test
+    void givenTableWithDuplicateUuids_whenInitializingTheSchema_thenTheLastRowOfEveryUuidIsKept() {
+        // given
+        databaseClient.sql("DROP INDEX product_uuid_uidx").then().block(); // as created before the upsert
+        for (double price : new double[]{1D, 2D}) {
+            databaseClient.sql("INSERT INTO product (uuid, p_name, description, price) VALUES ($1, $2, $3, $4)")
+                    .bind(0, UUID).bind(1, TEST_PRODUCT).bind(2, TEST_DESCRIPTION).bind(3, price)
+                    .then()
+                    .block();
+        }
+
+        // when
+        new ResourceDatabasePopulator(new ClassPathResource(ProductPartitioning.NONE.getSchema()))
+                .populate(connectionFactory)
+                .block();
+
+        // then
+        Assertions.assertEquals(1L, repository.count().block());
+        StepVerifier.create(repository.findByUuid(UUID))
+                .assertNext(product -> Assertions.assertEquals(2D, product.getPrice()))
+                .expectComplete()
+                .verify();
+        StepVerifier.create(databaseClient.sql("SELECT to_regclass('product_uuid_uidx') IS NOT NULL AS indexed")
+                        .map(row -> row.get("indexed", Boolean.class))
+                        .one())
+                .expectNext(true)
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void givenSavedProduct_whenFindingByUuid_thenReturnSavedProduct() {
+        // given
+        repository.save(buildProduct()).block();
+
+        // when
+        Mono<Product> productMono = repository.findByUuid(UUID);
+
+        // then
+        StepVerifier
+                .create(productMono)
+                .assertNext(product -> Assertions.assertEquals(TEST_PRODUCT, product.getName()))
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void givenProductsWithDifferentPrices_whenFindingByPriceRange_thenReturnPageOrderedByPrice() {
+        // given
+        for (int price = 1; price <= 5; price++) {
+            Product product = buildProduct();
+            product.setUuid(UUID + "-" + price);
+            product.setPrice((double) price);
+            repository.save(product).block();
+        }
+
+        // when
+        Flux<Product> products = repository.findByPriceBetween(2D, 4D, PageRequest.of(0, 2, Sort.by("price", "id")));
+
+        // then
+        StepVerifier
+                .create(products.map(Product::getPrice))
+                .expectNext(2D, 3D)
+                .expectComplete()
+                .verify();
+    }
+
     private Product buildProduct() {
         Product product = new Product();
         product.setUuid(UUID);
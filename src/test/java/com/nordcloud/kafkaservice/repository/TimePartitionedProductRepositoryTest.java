@@ -0,0 +1,115 @@
+package com.nordcloud.kafkaservice.repository;
+
+import com.nordcloud.kafkaservice.model.entity.Product;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes into day partitions of {@code persistence.partitioning=TIME}, on a database of its own as the product
+ * table is partitioned when it is created.
+ */
+@Testcontainers
+@ExtendWith(SpringExtension.class)
+@DataR2dbcTest
+@Import(ProductPartitions.class)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "persistence.partitioning=TIME",
+        "spring.r2dbc.url=r2dbc:tc:postgresql:///partitioned?TC_IMAGE_TAG=15-alpine"
+})
+public class TimePartitionedProductRepositoryTest {
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Autowired
+    private ProductPartitions partitions;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll().block();
+    }
+
+    @Test
+    void givenRedeliveredProduct_whenWrittenTheSameDay_thenRowOfTheDayPartitionIsUpdated() {
+        // given
+        Product product = new Product(null, UUID.randomUUID().toString(), "Prod", "Description", 1D);
+        repository.upsertAll(List.of(product), BulkWriteMode.UNNEST).block();
+
+        // when
+        product.setPrice(2D);
+        repository.upsertAll(List.of(product), BulkWriteMode.COPY).block();
+
+        // then
+        Assertions.assertEquals(1L, repository.count().block());
+        StepVerifier.create(repository.findByUuid(product.getUuid()))
+                .assertNext(written -> {
+                    Assertions.assertEquals(2D, written.getPrice());
+                    Assertions.assertNotNull(written.getIngestedAt());
+                })
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void givenProductWrittenOnAnEarlierDay_whenWrittenAgain_thenOnlyTheLatestVersionIsKept() {
+        // given
+        Instant yesterday = Instant.now().minus(Duration.ofDays(1));
+        ProductBulkRepositoryImpl earlierWriter = new ProductBulkRepositoryImpl(connectionFactory,
+                new ProductPartitions(connectionFactory, ProductPartitioning.TIME, 1, Clock.fixed(yesterday, ZoneOffset.UTC)));
+        Product product = new Product(null, UUID.randomUUID().toString(), "Prod", "Description", 1D);
+        earlierWriter.upsertAll(List.of(product), BulkWriteMode.UNNEST).block();
+
+        // when
+        product.setPrice(2D);
+        repository.upsertAll(List.of(product), BulkWriteMode.COPY).block();
+
+        // then
+        Assertions.assertEquals(1L, repository.count().block());
+        StepVerifier.create(repository.findByPriceBetween(0D, 10D, PageRequest.of(0, 10, Sort.by("price", "id"))))
+                .assertNext(written -> Assertions.assertEquals(2D, written.getPrice()))
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void givenPartitionOlderThanRetention_whenDroppingExpired_thenOnlyThatPartitionIsDropped() {
+        // given
+        Instant expired = Instant.now().minus(Duration.ofDays(40));
+        ProductBulkRepositoryImpl expiredWriter = new ProductBulkRepositoryImpl(connectionFactory,
+                new ProductPartitions(connectionFactory, ProductPartitioning.TIME, 1, Clock.fixed(expired, ZoneOffset.UTC)));
+        expiredWriter.upsertAll(List.of(new Product(null, "expired", "Prod", "Description", 1D)), BulkWriteMode.UNNEST).block();
+        repository.upsertAll(List.of(new Product(null, "current", "Prod", "Description", 1D)), BulkWriteMode.UNNEST).block();
+
+        // when then
+        StepVerifier.create(partitions.dropExpired(Duration.ofDays(30)))
+                .expectNext(partitions.table(expired))
+                .expectComplete()
+                .verify();
+        Assertions.assertEquals(1L, repository.count().block());
+        StepVerifier.create(repository.findByUuid("current")).expectNextCount(1).verifyComplete();
+    }
+}
@@ -0,0 +1,55 @@
+package com.nordcloud.kafkaservice.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+public class AdaptiveBatchControllerTest {
+
+    private static final int MIN_BATCH_SIZE = 10;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final AdaptiveBatchController controller = new AdaptiveBatchController(MIN_BATCH_SIZE, MAX_BATCH_SIZE,
+            Duration.ofMillis(100), Duration.ofMillis(500), true);
+
+    @Test
+    void givenFullBatchesAndFastWrites_whenAdjusting_thenBatchSizeGrows() {
+        // given when
+        for (int i = 0; i < AdaptiveBatchController.ADJUST_INTERVAL; i++) {
+            controller.split(Collections.nCopies(MAX_BATCH_SIZE, i));
+            controller.onWrite(Duration.ofMillis(10).toNanos());
+        }
+
+        // then
+        Assertions.assertTrue(controller.getBatchSize() > MIN_BATCH_SIZE);
+    }
+
+    @Test
+    void givenSlowWrites_whenAdjusting_thenBatchSizeShrinksToMinimum() {
+        // given
+        givenFullBatchesAndFastWrites_whenAdjusting_thenBatchSizeGrows();
+
+        // when
+        for (int i = 0; i < AdaptiveBatchController.LATENCY_WINDOW; i++) {
+            controller.split(Collections.nCopies(MAX_BATCH_SIZE, i));
+            controller.onWrite(Duration.ofSeconds(1).toNanos());
+        }
+
+        // then
+        Assertions.assertEquals(MIN_BATCH_SIZE, controller.getBatchSize());
+    }
+
+    @Test
+    void givenBufferLargerThanBatchSize_whenSplitting_thenBatchesHaveCurrentSize() {
+        // when
+        List<List<Integer>> batches = controller.split(Collections.nCopies(25, 1));
+
+        // then
+        Assertions.assertEquals(3, batches.size());
+        Assertions.assertEquals(MIN_BATCH_SIZE, batches.get(0).size());
+        Assertions.assertEquals(5, batches.get(2).size());
+    }
+}
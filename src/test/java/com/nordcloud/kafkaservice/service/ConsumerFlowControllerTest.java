@@ -0,0 +1,131 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(MockitoExtension.class)
+public class ConsumerFlowControllerTest {
+
+    private static final int MAX_BUFFERED_RECORDS = 4;
+
+    @Mock
+    private ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
+
+    @Test
+    void givenBufferedRecordsReachLimit_whenReceiving_thenPartitionsArePausedOnceAndResumedAfterCommit() {
+        // given
+        ConsumerFlowController flowController = buildFlowController(4);
+        Mockito.doReturn(Mono.just(1)).when(reactiveKafkaConsumerTemplate).doOnConsumer(Mockito.any());
+
+        // when
+        for (int i = 0; i < MAX_BUFFERED_RECORDS + 2; i++) {
+            flowController.onReceived();
+        }
+
+        // then
+        Assertions.assertTrue(flowController.isPaused());
+        Mockito.verify(reactiveKafkaConsumerTemplate, Mockito.times(1)).doOnConsumer(Mockito.any());
+
+        // when
+        flowController.onCommitted(MAX_BUFFERED_RECORDS);
+
+        // then
+        Assertions.assertFalse(flowController.isPaused());
+        Mockito.verify(reactiveKafkaConsumerTemplate, Mockito.times(2)).doOnConsumer(Mockito.any());
+    }
+
+    @Test
+    void givenConcurrencyOfOne_whenSecondWriteIsSubmitted_thenItStartsOnlyAfterTheFirstCompletes() {
+        // given
+        ConsumerFlowController flowController = buildFlowController(1);
+        Sinks.One<Integer> first = Sinks.one();
+        AtomicInteger secondStarted = new AtomicInteger();
+        flowController.withPermit(first.asMono()).subscribe();
+
+        // when
+        flowController.withPermit(Mono.fromCallable(secondStarted::incrementAndGet)).subscribe();
+
+        // then
+        Assertions.assertEquals(0, secondStarted.get());
+        first.tryEmitValue(1);
+        Assertions.assertEquals(1, secondStarted.get());
+    }
+
+    @Test
+    void givenQueuedWriteCancelledWhileBeingGranted_whenTheFirstCompletes_thenNoPermitIsLost() throws Exception {
+        // given
+        ConsumerFlowController flowController = buildFlowController(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                Sinks.One<Integer> first = Sinks.one();
+                flowController.withPermit(first.asMono()).subscribe();
+                Disposable queued = flowController.withPermit(Mono.just(2)).subscribe();
+                CountDownLatch start = new CountDownLatch(1);
+
+                // when
+                Future<?> completed = executor.submit(() -> {
+                    start.await();
+                    return first.tryEmitValue(1);
+                });
+                Future<?> cancelled = executor.submit(() -> {
+                    start.await();
+                    queued.dispose();
+                    return null;
+                });
+                start.countDown();
+                completed.get(5, TimeUnit.SECONDS);
+                cancelled.get(5, TimeUnit.SECONDS);
+
+                // then
+                AtomicInteger nextStarted = new AtomicInteger();
+                flowController.withPermit(Mono.fromCallable(nextStarted::incrementAndGet)).subscribe();
+                Assertions.assertEquals(1, nextStarted.get(), "permit lost in round " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenStalledWrites_whenAdjusting_thenConcurrencyIsHalvedDownToOne() {
+        // given
+        ConsumerFlowController flowController = buildFlowController(4);
+        flowController.withPermit(Mono.never()).subscribe();
+
+        // when
+        flowController.adjust();
+        flowController.adjust();
+        flowController.adjust();
+
+        // then
+        Assertions.assertEquals(1, flowController.getConcurrency());
+    }
+
+    private ConsumerFlowController buildFlowController(int maxConcurrency) {
+        ConsumerMetrics consumerMetrics = new ConsumerMetrics(new SimpleMeterRegistry(), "test_topic");
+        return new ConsumerFlowController(reactiveKafkaConsumerTemplate,
+                new ConsumerLagMonitor(reactiveKafkaConsumerTemplate, consumerMetrics, Duration.ofSeconds(5)),
+                new AdaptiveBatchController(10, 10, Duration.ofMillis(10), Duration.ofSeconds(1), false),
+                consumerMetrics, true, maxConcurrency, MAX_BUFFERED_RECORDS, Duration.ofSeconds(1), Duration.ofSeconds(1));
+    }
+}
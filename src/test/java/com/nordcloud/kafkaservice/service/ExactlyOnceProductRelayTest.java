@@ -0,0 +1,171 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Publisher;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.kafka.sender.SenderRecord;
+import reactor.kafka.sender.TransactionManager;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+public class ExactlyOnceProductRelayTest {
+
+    private static final String TEST_TOPIC = "test_topic";
+    private static final String OUTPUT_TOPIC = "test_topic.enriched";
+    private static final Duration DEFAULT_VERIFY_TIMEOUT = Duration.ofSeconds(10);
+
+    @Mock
+    private ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
+
+    @Mock
+    private ReactiveKafkaProducerTemplate<String, ProductDto> transactionalProducerTemplate;
+
+    @Mock
+    private TransactionManager transactionManager;
+
+    @Mock
+    private ProductBatchWriter productBatchWriter;
+
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Mock
+    private DeadLetterPublisher transactionalDeadLetterPublisher;
+
+    @Mock
+    private ProductBootstrap productBootstrap;
+
+    private final List<SenderRecord<String, ProductDto, ?>> sent = new ArrayList<>();
+    private ExactlyOnceProductRelay relay;
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.when(transactionalProducerTemplate.transactionManager()).thenReturn(transactionManager);
+        Mockito.when(deadLetterPublisher.through(transactionalProducerTemplate))
+                .thenReturn(transactionalDeadLetterPublisher);
+        relay = buildRelay(true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenPolledBatch_whenRelaying_thenWrittenProductsAreProducedAndCommittedInTheTransaction() {
+        // given
+        Mockito.when(reactiveKafkaConsumerTemplate.receiveExactlyOnce(transactionManager)).thenReturn(Flux.just(
+                Flux.just(buildRecord("1", 0), buildRecord("1", 1), buildRecord("2", 2))));
+        Mockito.when(productBatchWriter.write(Mockito.any(ProductBatch.class),
+                        Mockito.eq(transactionalDeadLetterPublisher)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> Flux.from(invocation.<Publisher<SenderRecord<String, ProductDto, ?>>>getArgument(0))
+                        .doOnNext(sent::add)
+                        .thenMany(Flux.empty()))
+                .when(transactionalProducerTemplate).send(Mockito.any(Publisher.class));
+        Mockito.when(transactionManager.commit()).thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(relay.relay())
+                .expectNext(2)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Assertions.assertEquals(List.of("1", "2"), sent.stream().map(SenderRecord::key).toList());
+        Assertions.assertTrue(sent.stream().allMatch(record -> OUTPUT_TOPIC.equals(record.topic())));
+        Assertions.assertEquals(1D, sent.get(0).value().getPrice()); // the later record of uuid 1 wins
+        Mockito.verify(transactionManager).commit();
+        Mockito.verify(transactionManager, Mockito.never()).abort();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenWriteFailure_whenRelaying_thenTransactionIsAbortedAndNothingIsProduced() {
+        // given
+        Mockito.when(reactiveKafkaConsumerTemplate.receiveExactlyOnce(transactionManager))
+                .thenReturn(Flux.just(Flux.just(buildRecord("1", 0))));
+        Mockito.when(productBatchWriter.write(Mockito.any(ProductBatch.class),
+                        Mockito.eq(transactionalDeadLetterPublisher)))
+                .thenReturn(Mono.error(new IllegalStateException("database unavailable")));
+        Mockito.when(transactionManager.abort()).thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(relay.relay())
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(transactionalProducerTemplate, Mockito.never()).send(Mockito.any(Publisher.class));
+        Mockito.verify(transactionManager, Mockito.never()).commit();
+        Mockito.verify(transactionManager).abort();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenRejectedRecord_whenRelaying_thenItIsDeadLetteredInTheTransaction() {
+        // given
+        relay = buildRelay(false);
+        ConsumerRecord<String, ProductDto> rejected = new ConsumerRecord<>(TEST_TOPIC, 0, 0, "1", null);
+        Mockito.when(reactiveKafkaConsumerTemplate.receiveExactlyOnce(transactionManager))
+                .thenReturn(Flux.just(Flux.just(rejected)));
+        Mockito.when(transactionalDeadLetterPublisher.publish(Mockito.any(), Mockito.any())).thenReturn(Mono.empty());
+        Mockito.when(transactionalProducerTemplate.send(Mockito.any(Publisher.class))).thenReturn(Flux.empty());
+        Mockito.when(transactionManager.commit()).thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(relay.relay())
+                .expectNext(0)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(transactionalDeadLetterPublisher).publish(Mockito.argThat(record -> record.offset() == 0),
+                Mockito.any(IllegalArgumentException.class));
+        Mockito.verify(deadLetterPublisher, Mockito.never()).publish(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void givenBootstrap_whenConsuming_thenRelaySubscribesOnceTheBootstrapCompleted() {
+        // given
+        Sinks.Empty<Void> bootstrapped = Sinks.empty();
+        Mockito.when(productBootstrap.bootstrap()).thenReturn(bootstrapped.asMono());
+        Mockito.when(reactiveKafkaConsumerTemplate.receiveExactlyOnce(transactionManager)).thenReturn(Flux.never());
+
+        // when
+        Disposable consumer = relay.consume();
+
+        // then
+        try {
+            Mockito.verify(reactiveKafkaConsumerTemplate, Mockito.never()).receiveExactlyOnce(transactionManager);
+            bootstrapped.tryEmitEmpty();
+            Mockito.verify(reactiveKafkaConsumerTemplate, Mockito.timeout(DEFAULT_VERIFY_TIMEOUT.toMillis()))
+                    .receiveExactlyOnce(transactionManager);
+        } finally {
+            consumer.dispose();
+        }
+    }
+
+    private ExactlyOnceProductRelay buildRelay(boolean persist) {
+        return new ExactlyOnceProductRelay(reactiveKafkaConsumerTemplate, transactionalProducerTemplate,
+                Mappers.getMapper(ProductMapper.class), productBatchWriter, deadLetterPublisher, productBootstrap,
+                new ConsumerMetrics(new SimpleMeterRegistry(), TEST_TOPIC), OUTPUT_TOPIC, persist,
+                Duration.ofSeconds(5));
+    }
+
+    private ConsumerRecord<String, ProductDto> buildRecord(String uuid, long offset) {
+        return new ConsumerRecord<>(TEST_TOPIC, 0, offset, uuid,
+                new ProductDto(uuid, "Test Product", "Test Description", (double) offset));
+    }
+}
@@ -1,25 +1,44 @@
 package com.nordcloud.kafkaservice.service;
 
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
 import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
 import com.nordcloud.kafkaservice.model.dto.ProductDto;
 import com.nordcloud.kafkaservice.model.entity.Product;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
 import com.nordcloud.kafkaservice.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.system.CapturedOutput;
 import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.kafka.receiver.ReceiverRecord;
 import reactor.test.StepVerifier;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.doThrow;
 
@@ -42,24 +61,36 @@ public class KafkaConsumerServiceTest {
     @Mock
     private ProductMapper productMapper;
 
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
     @Mock
     private ReactiveKafkaConsumerTemplate<String, ProductDto> reactiveKafkaConsumerTemplate;
 
+    @Mock
+    private ProductBootstrap productBootstrap;
+
+    private ProductSpool productSpool;
+
+    private ProductColumnsPool productColumnsPool;
+
     private KafkaConsumerService consumerService;
 
     @BeforeEach
     public void setUp() {
-        consumerService = new KafkaConsumerService(reactiveKafkaConsumerTemplate, repository, productMapper, 10);
+        productSpool = new ProductSpool(buildConsumerMetrics(), false, "", 0, 0, false);
+        productColumnsPool = new ProductColumnsPool(1, 10, 1024);
+        consumerService = buildConsumerService(new RecentProductCache(100), 0);
     }
 
     @Test
     @SuppressWarnings("unchecked")
     void givenProductDto_whenConsumingRecord_shouldReturnFluxWithOneProduct(CapturedOutput capturedOutput) {
         // given
-        Mockito.when(repository.saveAll(Mockito.any(Iterable.class))).thenReturn(Flux.just(buildProductDocument()));
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(1L));
         Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
-        ConsumerRecord<String, ProductDto> consumerRecord = new ConsumerRecord(TEST_TOPIC, DEFAULT_PARTITION, 0, null, buildTestProductDto());
-        Mockito.when(reactiveKafkaConsumerTemplate.receiveAutoAck()).thenReturn(Flux.just(consumerRecord));
+        ReceiverRecord<String, ProductDto> receiverRecord = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
 
         // when then
         StepVerifier.create(consumerService.consumeProducts())
@@ -72,14 +103,55 @@ public class KafkaConsumerServiceTest {
                 .verify(DEFAULT_VERIFY_TIMEOUT);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenTwoRecordsOfOneUuid_whenBatchIsSaved_shouldWriteOneProductAndCommitOnlyTheLastOffset() {
+        // given
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(1L));
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
+        ReceiverRecord<String, ProductDto> first = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        ReceiverRecord<String, ProductDto> second = buildReceiverRecord(DEFAULT_PARTITION, 1);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(first, second));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertEquals(1, products.size()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(second.receiverOffset()).commit();
+        Mockito.verify(first.receiverOffset(), Mockito.never()).commit();
+    }
+
+    @Test
+    void givenAlreadyWrittenProduct_whenRecordIsRedelivered_shouldSkipItAndCommit() {
+        // given
+        RecentProductCache recentProductCache = new RecentProductCache(100);
+        recentProductCache.remember(List.of(buildProductDocument()));
+        consumerService = buildConsumerService(recentProductCache, 0);
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(0L));
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
+        ReceiverRecord<String, ProductDto> receiverRecord = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertTrue(products.isEmpty()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(receiverRecord.receiverOffset()).commit();
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     void givenProductDto_whenConsumingRecordAndThrowingSQLRelatedException_shouldLogAndContinueProcessing(CapturedOutput capturedOutput) {
         // given
         Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
-        doThrow(new DataIntegrityViolationException("SQL Exception")).when(repository).saveAll(Mockito.any(Iterable.class));
-        ConsumerRecord<String, ProductDto> consumerRecord = new ConsumerRecord(TEST_TOPIC, DEFAULT_PARTITION, 0, null, buildTestProductDto());
-        Mockito.when(reactiveKafkaConsumerTemplate.receiveAutoAck()).thenReturn(Flux.just(consumerRecord));
+        doThrow(new DataIntegrityViolationException("SQL Exception")).when(repository)
+                .upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class));
+        ReceiverRecord<String, ProductDto> receiverRecord = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
+
+        Mockito.when(deadLetterPublisher.publish(Mockito.eq(receiverRecord), Mockito.any())).thenReturn(Mono.empty());
 
         // when then
         StepVerifier.create(consumerService.consumeProducts())
@@ -89,6 +161,347 @@ public class KafkaConsumerServiceTest {
                 })
                 .thenCancel()
                 .verify();
+        Mockito.verify(deadLetterPublisher).publish(Mockito.eq(receiverRecord), Mockito.any(DataIntegrityViolationException.class));
+        Mockito.verify(receiverRecord.receiverOffset()).commit();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenOnePoisonProductInBatch_whenSaving_shouldWriteTheOthersAndDeadLetterOnlyThePoisonRecord() {
+        // given
+        Product poison = buildProduct("poison");
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class)))
+                .thenReturn(buildProduct("a"), poison, buildProduct("b"));
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class)))
+                .thenAnswer(invocation -> ((List<Product>) invocation.getArgument(0)).contains(poison)
+                        ? Mono.error(new DataIntegrityViolationException("SQL Exception"))
+                        : Mono.just(1L));
+        ReceiverRecord<String, ProductDto> first = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        ReceiverRecord<String, ProductDto> second = buildReceiverRecord(DEFAULT_PARTITION, 1);
+        ReceiverRecord<String, ProductDto> third = buildReceiverRecord(DEFAULT_PARTITION, 2);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(first, second, third));
+        Mockito.when(deadLetterPublisher.publish(Mockito.eq(second), Mockito.any())).thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertEquals(List.of("a", "b"),
+                        products.stream().map(Product::getUuid).toList()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(deadLetterPublisher).publish(Mockito.eq(second), Mockito.any());
+        Mockito.verify(third.receiverOffset()).commit();
+    }
+
+    @Test
+    void givenRecordWithoutValue_whenConsuming_shouldDeadLetterItWithoutWriting() {
+        // given
+        ReceiverOffset receiverOffset = Mockito.mock(ReceiverOffset.class);
+        Mockito.when(receiverOffset.topicPartition()).thenReturn(new TopicPartition(TEST_TOPIC, DEFAULT_PARTITION));
+        Mockito.when(receiverOffset.commit()).thenReturn(Mono.empty());
+        ReceiverRecord<String, ProductDto> receiverRecord = new ReceiverRecord<>(
+                new ConsumerRecord<>(TEST_TOPIC, DEFAULT_PARTITION, 0, null, null), receiverOffset);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(0L));
+        Mockito.when(deadLetterPublisher.publish(Mockito.eq(receiverRecord), Mockito.any(IllegalArgumentException.class)))
+                .thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertTrue(products.isEmpty()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(receiverOffset).commit();
+    }
+
+    @Test
+    void givenCorruptRecordOnCompactedTopic_whenConsuming_shouldDeadLetterItAndCommitInsteadOfSkippingIt() {
+        // given
+        consumerService = buildConsumerService(new RecentProductCache(100), 0, false, true);
+        ReceiverRecord<String, ProductDto> corrupt = buildReceiverRecord(DEFAULT_PARTITION, 0, ID, null);
+        corrupt.headers().add(ProductDtoDeserializer.ERROR_HEADER, "Unsupported binary product version 9".getBytes());
+        corrupt.headers().add(ProductDtoDeserializer.VALUE_HEADER, new byte[]{9});
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(corrupt));
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(0L));
+        Mockito.when(deadLetterPublisher.publish(Mockito.eq(corrupt), Mockito.any(IllegalArgumentException.class)))
+                .thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertTrue(products.isEmpty()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(deadLetterPublisher).publish(Mockito.eq(corrupt), Mockito.any(IllegalArgumentException.class));
+        Mockito.verify(corrupt.receiverOffset()).commit();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenRecordsOnTwoPartitions_whenConsumingInPartitionMode_shouldSaveOneBatchPerPartition() {
+        // given
+        consumerService = buildConsumerService(new RecentProductCache(100), 2);
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(1L));
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
+        ReceiverRecord<String, ProductDto> first = buildReceiverRecord(0, 0);
+        ReceiverRecord<String, ProductDto> second = buildReceiverRecord(1, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(first, second));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .expectNextCount(2)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(repository, Mockito.times(2)).upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class));
+    }
+
+    @Test
+    void givenTwoBatchesOfOneUuid_whenConsumingOnTheSingleRail_shouldWriteTheSecondOnceTheFirstIsSaved() {
+        // given
+        List<String> writes = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class)))
+                .thenAnswer(invocation -> {
+                    int write = calls.getAndIncrement();
+                    writes.add("start-" + write);
+                    return Mono.delay(Duration.ofMillis(write == 0 ? 200 : 0)) // the older batch is the slower one
+                            .doOnNext(tick -> writes.add("end-" + write))
+                            .thenReturn(1L);
+                });
+        List<ReceiverRecord<String, ProductDto>> records = new ArrayList<>();
+        for (int offset = 0; offset < 11; offset++) {
+            records.add(buildReceiverRecord(DEFAULT_PARTITION, offset)); // a full batch of 10, then one record
+        }
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.fromIterable(records));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .expectNextCount(2)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Assertions.assertEquals(List.of("start-0", "end-0", "start-1", "end-1"), writes);
+    }
+
+    private KafkaConsumerService buildConsumerService(RecentProductCache recentProductCache, int partitionParallelism) {
+        return buildConsumerService(recentProductCache, partitionParallelism, false);
+    }
+
+    private KafkaConsumerService buildConsumerService(RecentProductCache recentProductCache, int partitionParallelism,
+                                                      boolean columnarBatches) {
+        return buildConsumerService(recentProductCache, partitionParallelism, columnarBatches, false);
+    }
+
+    private KafkaConsumerService buildConsumerService(RecentProductCache recentProductCache, int partitionParallelism,
+                                                      boolean columnarBatches, boolean compacted) {
+        return new KafkaConsumerService(reactiveKafkaConsumerTemplate, productMapper, buildWriter(recentProductCache),
+                productColumnsPool, recentProductCache, buildBatchController(), buildConsumerMetrics(),
+                new ConsumerLogging(0, true), buildFlowController(), productBootstrap, Schedulers.boundedElastic(),
+                partitionParallelism, 4, columnarBatches, compacted, Duration.ofMillis(10));
+    }
+
+    private ConsumerFlowController buildFlowController() {
+        ConsumerMetrics consumerMetrics = buildConsumerMetrics();
+        return new ConsumerFlowController(reactiveKafkaConsumerTemplate,
+                new ConsumerLagMonitor(reactiveKafkaConsumerTemplate, consumerMetrics, Duration.ofSeconds(5)),
+                buildBatchController(), consumerMetrics, true, 4, 10_000, Duration.ofSeconds(1), Duration.ofSeconds(1));
+    }
+
+    private ProductBatchWriter buildWriter(RecentProductCache recentProductCache) {
+        return new ProductBatchWriter(repository, deadLetterPublisher, productSpool, productColumnsPool,
+                recentProductCache, new ProductCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                buildBatchController(), buildConsumerMetrics(), BulkWriteMode.PER_ROW, 1, Duration.ofMillis(1),
+                Duration.ofMillis(1));
+    }
+
+    @Test
+    void givenTwoRecordsOfOneUuid_whenConsumingColumnarBatches_shouldWriteOneRowFromTheColumnsAndCommit() {
+        // given
+        consumerService = buildConsumerService(new RecentProductCache(100), 0, true);
+        List<Double> writtenPrices = new ArrayList<>();
+        Mockito.when(repository.upsertColumns(Mockito.any(ProductColumns.class), Mockito.eq(BulkWriteMode.PER_ROW)))
+                .thenAnswer(invocation -> {
+                    ProductColumns written = invocation.getArgument(0);
+                    for (int row = 0; row < written.size(); row++) {
+                        writtenPrices.add(written.getPrice(row)); // read before the columns return to the pool
+                    }
+                    return Mono.just((long) written.size());
+                });
+        ReceiverRecord<String, ProductDto> first = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        ReceiverRecord<String, ProductDto> second = buildReceiverRecord(DEFAULT_PARTITION, 1);
+        second.value().setPrice(2D);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(first, second));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertTrue(products.isEmpty()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Assertions.assertEquals(List.of(2D), writtenPrices);
+        Mockito.verify(second.receiverOffset()).commit();
+        Mockito.verifyNoInteractions(productMapper);
+    }
+
+    @Test
+    void givenPoisonColumnarBatch_whenWrittenAsProducts_shouldReturnItsColumnsToThePool() {
+        // given
+        consumerService = buildConsumerService(new RecentProductCache(100), 0, true);
+        List<ProductColumns> written = new ArrayList<>();
+        Mockito.when(repository.upsertColumns(Mockito.any(ProductColumns.class), Mockito.eq(BulkWriteMode.PER_ROW)))
+                .thenAnswer(invocation -> {
+                    written.add(invocation.getArgument(0));
+                    return Mono.error(new DataIntegrityViolationException("SQL Exception"));
+                });
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(1L));
+        ReceiverRecord<String, ProductDto> receiverRecord = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(receiverRecord.receiverOffset()).commit();
+        Assertions.assertSame(written.get(0), productColumnsPool.acquire());
+    }
+
+    @Test
+    void givenPoisonColumnarBatchFailingToDeadLetter_whenSpooling_shouldSpoolItsProductsAndReleaseItsColumnsOnce(
+            @TempDir Path spoolDirectory) {
+        // given
+        productSpool = new ProductSpool(buildConsumerMetrics(), true, spoolDirectory.toString(), 1024 * 1024,
+                4 * 1024 * 1024, false);
+        productColumnsPool = new ProductColumnsPool(2, 10, 1024); // room for a second copy of released columns
+        consumerService = buildConsumerService(new RecentProductCache(100), 0, true);
+        List<ProductColumns> written = new ArrayList<>();
+        Mockito.when(repository.upsertColumns(Mockito.any(ProductColumns.class), Mockito.eq(BulkWriteMode.PER_ROW)))
+                .thenAnswer(invocation -> {
+                    written.add(invocation.getArgument(0));
+                    return Mono.error(new DataIntegrityViolationException("SQL Exception"));
+                });
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class)))
+                .thenReturn(Mono.error(new DataIntegrityViolationException("SQL Exception")));
+        Mockito.when(deadLetterPublisher.publish(Mockito.any(), Mockito.any()))
+                .thenReturn(Mono.error(new IllegalStateException("Dead-letter topic unavailable")));
+        ReceiverRecord<String, ProductDto> receiverRecord = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(receiverRecord.receiverOffset()).commit();
+        ProductColumns spooled = new ProductColumns(10, 1024);
+        productSpool.poll(spooled, 10);
+        Assertions.assertEquals(List.of(ID), spooled.toProducts().stream().map(Product::getUuid).toList());
+        Assertions.assertSame(written.get(0), productColumnsPool.acquire());
+        Assertions.assertNotSame(written.get(0), productColumnsPool.acquire()); // released once
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenCompactedTopic_whenConsumingTombstoneAndForeignKey_shouldSkipTheTombstoneAndDeadLetterTheForeignKey() {
+        // given
+        consumerService = buildConsumerService(new RecentProductCache(100), 0, false, true);
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class))).thenReturn(Mono.just(1L));
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
+        ReceiverRecord<String, ProductDto> keyed = buildReceiverRecord(DEFAULT_PARTITION, 0, ID, buildTestProductDto());
+        ReceiverRecord<String, ProductDto> tombstone = buildReceiverRecord(DEFAULT_PARTITION, 1, "2", null);
+        ReceiverRecord<String, ProductDto> foreignKey = buildReceiverRecord(DEFAULT_PARTITION, 2, "3", buildTestProductDto());
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(keyed, tombstone, foreignKey));
+        Mockito.when(deadLetterPublisher.publish(Mockito.eq(foreignKey), Mockito.any(IllegalArgumentException.class)))
+                .thenReturn(Mono.empty());
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertEquals(List.of(ID),
+                        products.stream().map(Product::getUuid).toList()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Mockito.verify(deadLetterPublisher, Mockito.never()).publish(Mockito.eq(tombstone), Mockito.any());
+        Mockito.verify(foreignKey.receiverOffset()).commit();
+    }
+
+    @Test
+    void givenDatabaseDown_whenSavingWithSpoolEnabled_shouldSpoolTheBatchAndCommit(@TempDir Path spoolDirectory) {
+        // given
+        productSpool = new ProductSpool(buildConsumerMetrics(), true, spoolDirectory.toString(), 1024 * 1024,
+                4 * 1024 * 1024, false);
+        consumerService = buildConsumerService(new RecentProductCache(100), 0);
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenReturn(buildProductDocument());
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class)))
+                .thenReturn(Mono.error(new DataAccessResourceFailureException("Connection refused")));
+        ReceiverRecord<String, ProductDto> receiverRecord = buildReceiverRecord(DEFAULT_PARTITION, 0);
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.just(receiverRecord));
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .assertNext(products -> Assertions.assertEquals(1, products.size()))
+                .thenCancel()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Assertions.assertEquals(1, productSpool.getPendingEntries());
+        Assertions.assertEquals(1, productSpool.getPendingProducts());
+        Mockito.verify(receiverRecord.receiverOffset()).commit();
+    }
+
+    @Test
+    void givenTwoPartitionsFailingAtOnce_whenSpooling_shouldSpoolTheLaterBatchOfAPartitionBehindThem(
+            @TempDir Path spoolDirectory) {
+        // given
+        productSpool = new ProductSpool(buildConsumerMetrics(), true, spoolDirectory.toString(), 1024 * 1024,
+                4 * 1024 * 1024, false);
+        consumerService = buildConsumerService(new RecentProductCache(100), 2);
+        Mockito.when(productMapper.toProduct(Mockito.any(ProductDto.class))).thenAnswer(invocation -> {
+            ProductDto productDto = invocation.getArgument(0);
+            Product product = buildProduct(productDto.getUuid());
+            product.setPrice(productDto.getPrice());
+            return product;
+        });
+        AtomicInteger attempts = new AtomicInteger();
+        Mockito.when(repository.upsertAll(Mockito.anyList(), Mockito.any(BulkWriteMode.class)))
+                .thenAnswer(invocation -> attempts.incrementAndGet() <= 4 // both batches, tried twice each
+                        ? Mono.delay(Duration.ofMillis(50))
+                                .then(Mono.error(new DataAccessResourceFailureException("Connection refused")))
+                        : Mono.just(1L));
+        ReceiverRecord<String, ProductDto> later = buildReceiverRecord(DEFAULT_PARTITION, 1, null, buildProductDto("a", 2D));
+        Mockito.when(reactiveKafkaConsumerTemplate.receive()).thenReturn(Flux.concat(
+                Flux.just(buildReceiverRecord(DEFAULT_PARTITION, 0, null, buildProductDto("a", PRICE)),
+                        buildReceiverRecord(DEFAULT_PARTITION + 1, 0, null, buildProductDto("b", PRICE))),
+                Mono.delay(Duration.ofMillis(500)).then(Mono.just(later)))); // once the database is back
+
+        // when then
+        StepVerifier.create(consumerService.consumeProducts())
+                .expectNextCount(3)
+                .thenCancel()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Assertions.assertEquals(4, attempts.get()); // the later batch never overtakes the spooled one of its uuid
+        Assertions.assertEquals(3, productSpool.getPendingEntries());
+        ProductColumns drained = new ProductColumns(10, 1024);
+        productSpool.poll(drained, 10);
+        Assertions.assertEquals(Map.of("a", 2D, "b", PRICE), drained.toProducts().stream()
+                .collect(Collectors.toMap(Product::getUuid, Product::getPrice)));
+        Mockito.verify(later.receiverOffset()).commit();
+    }
+
+    private ConsumerMetrics buildConsumerMetrics() {
+        return new ConsumerMetrics(new SimpleMeterRegistry(), TEST_TOPIC);
+    }
+
+    private AdaptiveBatchController buildBatchController() {
+        return new AdaptiveBatchController(10, 10, Duration.ofMillis(10), Duration.ofSeconds(1), false);
+    }
+
+    private ReceiverRecord<String, ProductDto> buildReceiverRecord(int partition, long offset) {
+        return buildReceiverRecord(partition, offset, null, buildTestProductDto());
+    }
+
+    private ReceiverRecord<String, ProductDto> buildReceiverRecord(int partition, long offset, String key,
+                                                                   ProductDto productDto) {
+        ReceiverOffset receiverOffset = Mockito.mock(ReceiverOffset.class);
+        Mockito.lenient().when(receiverOffset.topicPartition()).thenReturn(new TopicPartition(TEST_TOPIC, partition));
+        Mockito.lenient().when(receiverOffset.commit()).thenReturn(Mono.empty());
+        ConsumerRecord<String, ProductDto> consumerRecord =
+                new ConsumerRecord<>(TEST_TOPIC, partition, offset, key, productDto);
+        return new ReceiverRecord<>(consumerRecord, receiverOffset);
     }
 
     private ProductDto buildTestProductDto() {
@@ -100,9 +513,22 @@ public class KafkaConsumerServiceTest {
                 .build();
     }
 
+    private ProductDto buildProductDto(String uuid, double price) {
+        return ProductDto.builder()
+                .uuid(uuid)
+                .name(TEST_PRODUCT)
+                .description(TEST_DESCRIPTION)
+                .price(price)
+                .build();
+    }
+
     private Product buildProductDocument() {
+        return buildProduct(ID);
+    }
+
+    private Product buildProduct(String uuid) {
         Product product = new Product();
-        product.setUuid(ID);
+        product.setUuid(uuid);
         product.setName(TEST_PRODUCT);
         product.setDescription(TEST_DESCRIPTION);
         product.setPrice(PRICE);
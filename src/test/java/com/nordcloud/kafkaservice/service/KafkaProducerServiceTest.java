@@ -0,0 +1,126 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.metrics.ProducerMetrics;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Publisher;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.sender.SenderRecord;
+import reactor.kafka.sender.SenderResult;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+@ExtendWith(MockitoExtension.class)
+public class KafkaProducerServiceTest {
+
+    private static final String TEST_TOPIC = "test_topic";
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final Duration DEFAULT_VERIFY_TIMEOUT = Duration.ofSeconds(10);
+
+    @Mock
+    private ReactiveKafkaProducerTemplate<String, ProductDto> reactiveKafkaProducerTemplate;
+
+    private KafkaProducerService kafkaProducerService;
+
+    @BeforeEach
+    public void setUp() {
+        kafkaProducerService = new KafkaProducerService(reactiveKafkaProducerTemplate,
+                new ProducerMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(kafkaProducerService, "topic", TEST_TOPIC);
+    }
+
+    @Test
+    void givenProducts_whenSendingAll_thenEveryResultMapsBackToItsProduct() {
+        // given
+        acknowledge(record -> Mono.just(acknowledged(record, null)));
+
+        // when then
+        StepVerifier.create(kafkaProducerService.sendAll(Flux.just(buildProductDto("1"), buildProductDto("2"))))
+                .assertNext(result -> {
+                    Assertions.assertEquals(buildProductDto("1"), result.correlationMetadata());
+                    Assertions.assertEquals(TEST_TOPIC, result.recordMetadata().topic());
+                })
+                .assertNext(result -> Assertions.assertEquals(buildProductDto("2"), result.correlationMetadata()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+    }
+
+    @Test
+    void givenFailingRecord_whenSendingAll_thenItsResultCarriesTheFailureAndLaterRecordsAreSent() {
+        // given
+        acknowledge(record -> Mono.just(acknowledged(record, "2".equals(record.key())
+                ? new IllegalStateException("Broker unavailable")
+                : null)));
+
+        // when then
+        StepVerifier.create(kafkaProducerService.sendAll(
+                        Flux.just(buildProductDto("1"), buildProductDto("2"), buildProductDto("3"))))
+                .assertNext(result -> Assertions.assertNull(result.exception()))
+                .assertNext(result -> {
+                    Assertions.assertNotNull(result.exception());
+                    Assertions.assertEquals(buildProductDto("2"), result.correlationMetadata());
+                })
+                .assertNext(result -> Assertions.assertEquals(buildProductDto("3"), result.correlationMetadata()))
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+    }
+
+    @Test
+    void givenSenderBoundedInFlight_whenSendingAll_thenUnacknowledgedProductsStayWithinTheBound() {
+        // given
+        acknowledge(record -> Mono.delay(Duration.ofMillis(1)).thenReturn(acknowledged(record, null)));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Flux<ProductDto> productDtos = Flux.range(0, 200)
+                .map(i -> buildProductDto(String.valueOf(i)))
+                .doOnNext(productDto -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max));
+
+        // when then
+        StepVerifier.create(kafkaProducerService.sendAll(productDtos).doOnNext(result -> inFlight.decrementAndGet()))
+                .expectNextCount(200)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        Assertions.assertTrue(maxInFlight.get() <= MAX_IN_FLIGHT, "in flight: " + maxInFlight.get());
+    }
+
+    /**
+     * Stands in for the sender: at most {@value #MAX_IN_FLIGHT} records unacknowledged, as with
+     * {@code producer.maxInFlight}.
+     */
+    @SuppressWarnings("unchecked")
+    private void acknowledge(Function<SenderRecord<String, ProductDto, Object>, Mono<SenderResult<Object>>> ack) {
+        Mockito.doAnswer(invocation -> Flux.from(
+                        invocation.<Publisher<SenderRecord<String, ProductDto, Object>>>getArgument(0))
+                        .flatMap(ack, MAX_IN_FLIGHT))
+                .when(reactiveKafkaProducerTemplate).send(Mockito.any(Publisher.class));
+    }
+
+    private SenderResult<Object> acknowledged(SenderRecord<String, ProductDto, Object> record, Exception exception) {
+        RecordMetadata metadata = exception != null ? null
+                : new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0);
+        return new TestSenderResult(metadata, exception, record.correlationMetadata());
+    }
+
+    private ProductDto buildProductDto(String uuid) {
+        return ProductDto.builder().uuid(uuid).name("Test Product").description("Test Description").price(1D).build();
+    }
+
+    private record TestSenderResult(RecordMetadata recordMetadata, Exception exception, Object correlationMetadata)
+            implements SenderResult<Object> {
+    }
+}
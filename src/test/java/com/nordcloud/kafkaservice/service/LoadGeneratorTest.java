@@ -0,0 +1,63 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+/**
+ * End-to-end latency harness: the whole application against the embedded Kafka and a Postgres of its own, the load
+ * sent by a {@link LoadGenerator} built here rather than at startup.
+ */
+@Testcontainers
+@SpringBootTest(properties = {
+        "spring.main.allow-bean-definition-overriding=true", // the schema initializer of the tests
+        "spring.r2dbc.url=r2dbc:tc:postgresql:///loadgen?TC_IMAGE_TAG=15-alpine",
+        "loadgen.enabled=false"
+})
+@EmbeddedKafka(topics = "product_topic", partitions = 2)
+@ActiveProfiles("test")
+public class LoadGeneratorTest {
+
+    private static final int COUNT = 1_000;
+    private static final Duration DEFAULT_VERIFY_TIMEOUT = Duration.ofMinutes(1);
+
+    @Autowired
+    private KafkaProducerService kafkaProducerService;
+
+    @Autowired
+    private ConsumerMetrics consumerMetrics;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void givenThrottledLoad_whenRunning_thenEveryProductIsCommittedWithItsEndToEndLatency() {
+        // given
+        LoadGenerator loadGenerator = new LoadGenerator(kafkaProducerService, consumerMetrics, 500, COUNT, Duration.ZERO,
+                LoadDistribution.ZIPF, 16, 1024, LoadDistribution.UNIFORM, 0, Duration.ofSeconds(30), "");
+
+        // when then
+        StepVerifier.create(loadGenerator.run())
+                .assertNext(report -> {
+                    Assertions.assertEquals(COUNT, report.sent());
+                    Assertions.assertEquals(0, report.failed());
+                    Assertions.assertEquals(COUNT, report.latency().getTotalCount());
+                    Assertions.assertTrue(report.latency().getMaxValue() > 0);
+                })
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+        StepVerifier.create(productRepository.count())
+                .expectNext((long) COUNT)
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+    }
+}
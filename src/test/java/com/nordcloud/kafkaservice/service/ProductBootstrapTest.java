@@ -0,0 +1,105 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.codec.ProductDtoDeserializer;
+import com.nordcloud.kafkaservice.codec.ProductDtoSerializer;
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.test.condition.EmbeddedKafkaCondition;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@ExtendWith(MockitoExtension.class)
+@EmbeddedKafka(topics = ProductBootstrapTest.TEST_TOPIC, partitions = 2)
+public class ProductBootstrapTest {
+
+    public static final String TEST_TOPIC = "bootstrapTopic";
+    private static final String GROUP_ID = "bootstrap-consumer-group";
+    private static final Duration DEFAULT_VERIFY_TIMEOUT = Duration.ofSeconds(30);
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Test
+    void givenSeveralVersionsPerUuid_whenBootstrapping_thenLatestVersionsAreLoadedOnceAndEndOffsetsCommitted() {
+        // given
+        Map<String, Object> producerProps =
+                KafkaTestUtils.producerProps(EmbeddedKafkaCondition.getBroker().getBrokersAsString());
+        producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ProductDtoSerializer.class);
+        try (KafkaProducer<String, ProductDto> producer = new KafkaProducer<>(producerProps)) {
+            for (int version = 0; version < 3; version++) {
+                for (String uuid : List.of("a", "b", "c")) {
+                    producer.send(new ProducerRecord<>(TEST_TOPIC, uuid,
+                            new ProductDto(uuid, "Test Product", "Test Description", (double) version)));
+                }
+            }
+            producer.send(new ProducerRecord<>(TEST_TOPIC, "d", null)); // tombstone
+        }
+        Map<String, Double> loaded = new HashMap<>();
+        Mockito.when(productRepository.upsertColumns(Mockito.any(ProductColumns.class), Mockito.eq(BulkWriteMode.COPY)))
+                .thenAnswer(invocation -> {
+                    ProductColumns columns = invocation.getArgument(0);
+                    for (int row = 0; row < columns.size(); row++) {
+                        loaded.put(columns.getString(row, ProductColumns.UUID_COLUMN), columns.getPrice(row));
+                    }
+                    return Mono.just((long) columns.size());
+                });
+        ProductBootstrap productBootstrap = new ProductBootstrap(ReceiverOptions.create(consumerProps()),
+                productRepository, new ConsumerMetrics(new SimpleMeterRegistry(), TEST_TOPIC), TEST_TOPIC,
+                BootstrapMode.ALWAYS, 500, 1_048_576, 1_000, 1024);
+
+        // when
+        StepVerifier.create(productBootstrap.bootstrap())
+                .expectComplete()
+                .verify(DEFAULT_VERIFY_TIMEOUT);
+
+        // then
+        Assertions.assertEquals(Map.of("a", 2D, "b", 2D, "c", 2D), loaded);
+        Mockito.verify(productRepository).upsertColumns(Mockito.any(ProductColumns.class), Mockito.eq(BulkWriteMode.COPY));
+        try (KafkaConsumer<String, ProductDto> consumer = new KafkaConsumer<>(consumerProps())) {
+            Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(
+                    Set.of(new TopicPartition(TEST_TOPIC, 0), new TopicPartition(TEST_TOPIC, 1)));
+            Assertions.assertEquals(10, committed.values().stream().mapToLong(OffsetAndMetadata::offset).sum());
+        }
+    }
+
+    private Map<String, Object> consumerProps() {
+        Map<String, Object> consumerProps = KafkaTestUtils
+                .consumerProps(GROUP_ID, "false", EmbeddedKafkaCondition.getBroker());
+        consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ProductDtoDeserializer.class);
+        consumerProps.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        consumerProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ProductDto.class.getName());
+        consumerProps.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        return consumerProps;
+    }
+}
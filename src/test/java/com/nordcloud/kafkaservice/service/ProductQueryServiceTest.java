@@ -0,0 +1,88 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.mapper.ProductMapper;
+import com.nordcloud.kafkaservice.model.dto.ProductDto;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductQueryServiceTest {
+
+    private static final String UUID = "1-2-3-4";
+    private static final int ID = 7;
+
+    @Mock
+    private ProductRepository repository;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ProductCache productCache;
+    private ProductQueryService queryService;
+
+    @BeforeEach
+    public void setUp() {
+        productCache = new ProductCache(meterRegistry, 100, Duration.ofMinutes(1));
+        queryService = new ProductQueryService(repository, productCache, Mappers.getMapper(ProductMapper.class));
+    }
+
+    @Test
+    void givenUnknownUuid_whenReadingTwice_thenDatabaseIsQueriedOnceAndSecondReadHitsTheCache() {
+        // given
+        Mockito.when(repository.findByUuid(UUID)).thenReturn(Mono.just(buildProduct()));
+
+        // when
+        StepVerifier.create(queryService.findByUuid(UUID)).expectNext(buildProductDto()).verifyComplete();
+        StepVerifier.create(queryService.findByUuid(UUID)).expectNext(buildProductDto()).verifyComplete();
+
+        // then
+        Mockito.verify(repository, Mockito.times(1)).findByUuid(UUID);
+        Assertions.assertEquals(1D, meterRegistry.get("cache.gets").tag("cache", "product.uuid").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void givenProductReadByUuid_whenReadingById_thenCacheServesIt() {
+        // given
+        Mockito.when(repository.findByUuid(UUID)).thenReturn(Mono.just(buildProduct()));
+        queryService.findByUuid(UUID).block();
+
+        // when then
+        StepVerifier.create(queryService.findById(ID)).expectNext(buildProductDto()).verifyComplete();
+        Mockito.verify(repository, Mockito.never()).findById(Mockito.anyInt());
+    }
+
+    @Test
+    void givenSavedBatch_whenWrittenThrough_thenReadDoesNotQueryTheDatabase() {
+        // given
+        Product product = buildProduct();
+        product.setId(null); // upserted products carry no id
+        productCache.putAll(new ProductBatch(List.of(product), null, List.of(), List.of(), Map.of(), Map.of(), 1, 0));
+
+        // when then
+        StepVerifier.create(queryService.findByUuid(UUID)).expectNext(buildProductDto()).verifyComplete();
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    private Product buildProduct() {
+        return new Product(ID, UUID, "Test Product", "Test Description", 10D);
+    }
+
+    private ProductDto buildProductDto() {
+        return new ProductDto(UUID, "Test Product", "Test Description", 10D);
+    }
+}
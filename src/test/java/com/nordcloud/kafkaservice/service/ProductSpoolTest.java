@@ -0,0 +1,176 @@
+package com.nordcloud.kafkaservice.service;
+
+import com.nordcloud.kafkaservice.metrics.ConsumerMetrics;
+import com.nordcloud.kafkaservice.model.batch.ProductColumns;
+import com.nordcloud.kafkaservice.model.entity.Product;
+import com.nordcloud.kafkaservice.repository.BulkWriteMode;
+import com.nordcloud.kafkaservice.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class ProductSpoolTest {
+
+    private static final String TEST_TOPIC = "spool_topic";
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenSpooledBatches_whenPolling_thenProductsAreReadInOrderWithTheLastVersionWinning() {
+        // given
+        ProductSpool productSpool = buildSpool(SEGMENT_BYTES * 4);
+        Assertions.assertTrue(productSpool.append(buildBatch(0, buildProduct("a", 1D), buildProduct("b", 1D))));
+        Assertions.assertTrue(productSpool.append(buildBatch(2, buildProduct("a", 2D))));
+        ProductColumns columns = new ProductColumns(10, 1024);
+
+        // when
+        ProductSpool.Polled polled = productSpool.poll(columns, 100);
+
+        // then
+        Assertions.assertEquals(2, polled.entries());
+        Assertions.assertEquals(TEST_TOPIC + "-0[0..1], " + TEST_TOPIC + "-0[2..2]", polled.offsets());
+        Assertions.assertEquals(2, columns.size());
+        Assertions.assertEquals("a", columns.getString(0, ProductColumns.UUID_COLUMN));
+        Assertions.assertEquals(2D, columns.getPrice(0));
+        Assertions.assertEquals(1D, columns.getPrice(1));
+        Assertions.assertEquals(3, productSpool.getPendingProducts());
+    }
+
+    @Test
+    void givenBatchesOverSeveralSegments_whenCommitted_thenTheSpoolIsEmptyAndDrainedSegmentsAreDeleted() throws IOException {
+        // given
+        ProductSpool productSpool = buildSpool(SEGMENT_BYTES * 4);
+        for (int batch = 0; batch < 40; batch++) {
+            Assertions.assertTrue(productSpool.append(buildBatch(batch, buildProduct("uuid-" + batch, (double) batch))));
+        }
+        Assertions.assertTrue(segmentFiles() > 1);
+        ProductColumns columns = new ProductColumns(10, 1024);
+
+        // when
+        ProductSpool.Polled polled = productSpool.poll(columns, 100);
+        productSpool.commit(polled.entries());
+
+        // then
+        Assertions.assertEquals(40, polled.entries());
+        Assertions.assertEquals(40, columns.size());
+        Assertions.assertTrue(productSpool.isEmpty());
+        Assertions.assertEquals(0, productSpool.getPendingProducts());
+        Assertions.assertEquals(1, segmentFiles());
+    }
+
+    @Test
+    void givenPartlyDrainedSpool_whenReopened_thenOnlyThePendingEntriesAreRecovered() {
+        // given
+        ProductSpool productSpool = buildSpool(SEGMENT_BYTES * 4);
+        productSpool.append(buildBatch(0, buildProduct("a", 1D)));
+        productSpool.append(buildBatch(1, buildProduct("b", 1D)));
+        productSpool.append(buildBatch(2, buildProduct("c", 1D)));
+        productSpool.poll(new ProductColumns(10, 1024), 1);
+        productSpool.commit(1);
+
+        // when
+        ProductSpool reopened = buildSpool(SEGMENT_BYTES * 4);
+
+        // then
+        Assertions.assertEquals(2, reopened.getPendingEntries());
+        ProductColumns columns = new ProductColumns(10, 1024);
+        Assertions.assertEquals(2, reopened.poll(columns, 100).entries());
+        Assertions.assertEquals("b", columns.getString(0, ProductColumns.UUID_COLUMN));
+        Assertions.assertEquals("c", columns.getString(1, ProductColumns.UUID_COLUMN));
+    }
+
+    @Test
+    void givenFullSpool_whenAppending_thenTheBatchIsRefused() {
+        // given
+        ProductSpool productSpool = buildSpool(SEGMENT_BYTES);
+        int appended = 0;
+        while (productSpool.append(buildBatch(appended, buildProduct("uuid-" + appended, 1D)))) {
+            appended++;
+        }
+
+        // when then
+        Assertions.assertTrue(appended > 0);
+        Assertions.assertEquals(appended, productSpool.getPendingEntries());
+        Assertions.assertEquals(SEGMENT_BYTES, productSpool.getDiskBytes());
+    }
+
+    @Test
+    void givenSpooledBatches_whenDatabaseIsBack_thenTheDrainerWritesThemOnceCachesThemAndEmptiesTheSpool() {
+        // given
+        ProductSpool productSpool = buildSpool(SEGMENT_BYTES * 4);
+        productSpool.append(buildBatch(0, buildProduct("a", 1D), buildProduct("b", 1D)));
+        productSpool.append(buildBatch(2, buildProduct("a", 2D)));
+        ProductRepository productRepository = Mockito.mock(ProductRepository.class);
+        List<Double> writtenPrices = new ArrayList<>();
+        Mockito.when(productRepository.upsertColumns(Mockito.any(ProductColumns.class), Mockito.eq(BulkWriteMode.COPY)))
+                .thenAnswer(invocation -> {
+                    ProductColumns written = invocation.getArgument(0);
+                    for (int row = 0; row < written.size(); row++) {
+                        writtenPrices.add(written.getPrice(row));
+                    }
+                    return Mono.just((long) written.size());
+                });
+        ProductCache productCache = new ProductCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+        productCache.put(buildProduct("a", 0.5D)); // cached before the outage
+        ProductSpoolDrainer drainer = new ProductSpoolDrainer(productSpool, productRepository, productCache,
+                buildConsumerMetrics(), BulkWriteMode.COPY, Duration.ofSeconds(1), 100, 1024);
+
+        // when then
+        StepVerifier.create(drainer.drain())
+                .expectNext(2L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+        Assertions.assertEquals(List.of(2D, 1D), writtenPrices);
+        Assertions.assertTrue(productSpool.isEmpty());
+        Assertions.assertEquals(2D, productCache.getByUuid("a").getPrice());
+        Assertions.assertEquals(1D, productCache.getByUuid("b").getPrice());
+    }
+
+    private ProductSpool buildSpool(long maxBytes) {
+        return new ProductSpool(buildConsumerMetrics(), true, directory.toString(), SEGMENT_BYTES, maxBytes, true);
+    }
+
+    private ConsumerMetrics buildConsumerMetrics() {
+        return new ConsumerMetrics(new SimpleMeterRegistry(), TEST_TOPIC);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private ProductBatch buildBatch(long firstOffset, Product... products) {
+        TopicPartition topicPartition = new TopicPartition(TEST_TOPIC, 0);
+        ReceiverOffset lastOffset = Mockito.mock(ReceiverOffset.class);
+        Mockito.when(lastOffset.offset()).thenReturn(firstOffset + products.length - 1);
+        return new ProductBatch(List.of(products), null, List.of(), List.of(), Map.of(topicPartition, firstOffset),
+                Map.of(topicPartition, lastOffset), products.length, 0);
+    }
+
+    private Product buildProduct(String uuid, Double price) {
+        Product product = new Product();
+        product.setUuid(uuid);
+        product.setName("Test Product");
+        product.setDescription("Test Description");
+        product.setPrice(price);
+        return product;
+    }
+}